@@ -0,0 +1,134 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.benchmark;
+
+/**
+ * Generates syntactically and semantically valid input for the example grammars. The input is a fixed
+ * header, a body repeated until the requested size is reached, and a fixed footer.
+ */
+public class Corpus {
+    public static final String JP = "jp";
+    public static final String INTERPRETER = "interpreter";
+    public static final String COMPILER = "compiler";
+
+    /** @return name of the mapper class for the specified grammar */
+    public static String mapper(String grammar) {
+        if (JP.equals(grammar) || INTERPRETER.equals(grammar) || COMPILER.equals(grammar)) {
+            return grammar + ".Mapper";
+        }
+        throw new IllegalArgumentException("unknown grammar: " + grammar);
+    }
+
+    /** @param size  approximate number of characters */
+    public static String generate(String grammar, int size) {
+        if (JP.equals(grammar)) {
+            return jp(size);
+        } else if (INTERPRETER.equals(grammar)) {
+            return statements("script\n  int a;\n  int b;\n{\n", size, "}\n");
+        } else if (COMPILER.equals(grammar)) {
+            return statements("program {\n  int a;\n  int b;\n", size, "}\n");
+        } else {
+            throw new IllegalArgumentException("unknown grammar: " + grammar);
+        }
+    }
+
+    /** One compilation unit with many classes. */
+    private static String jp(int size) {
+        StringBuilder builder;
+        int i;
+
+        builder = new StringBuilder(size + 256);
+        builder.append("package bench;\n\nimport java.util.List;\n\n");
+        for (i = 0; builder.length() < size; i++) {
+            builder.append("/** Class number ").append(i).append(". */\n");
+            builder.append("class C").append(i).append(" extends Object implements Runnable {\n");
+            builder.append("    private int count").append(i).append(" = 0;\n");
+            builder.append("    private String name = \"c").append(i).append("\";\n\n");
+            builder.append("    public int sum(int[] values, List list) {\n");
+            builder.append("        int result = 0;\n");
+            builder.append("        for (int j = 0; j < values.length; j++) {\n");
+            builder.append("            if (values[j] > 0x1f && values[j] != 'x') {\n");
+            builder.append("                result = result + values[j] * 2;\n");
+            builder.append("            } else {\n");
+            builder.append("                result -= 1;  // negative\n");
+            builder.append("            }\n");
+            builder.append("        }\n");
+            builder.append("        return result + count").append(i).append(" + list.size();\n");
+            builder.append("    }\n\n");
+            builder.append("    public void run() {\n");
+            builder.append("        count").append(i).append("++;\n");
+            builder.append("        System.out.println(name + \": \" + sum(new int[] { 1, 2, 3 }, null));\n");
+            builder.append("    }\n");
+            builder.append("}\n\n");
+        }
+        return builder.toString();
+    }
+
+    /** Statements per block. */
+    private static final int FANOUT = 64;
+
+    /**
+     * Statements common to the interpreter and the compiler grammar. Statements are nested in blocks of
+     * FANOUT statements: both mappers pass declarations down the statement list, so a flat list keeps the
+     * whole tree and attribution recurses once per statement.
+     */
+    private static String statements(String header, int size, String footer) {
+        StringBuilder builder;
+        String group;
+        int depth;
+        int levels;
+        int i;
+        int n;
+
+        group = "  a = (a + b * 7) / 3;\n"
+                + "  if (a > 100) {\n"
+                + "    b = b - 7;\n"
+                + "  } else {\n"
+                + "    print \"small\";\n"
+                + "  }\n"
+                + "  while (b < 0) {\n"
+                + "    b = b + a;\n"
+                + "  }\n"
+                + "  print a;\n";
+        depth = 0;
+        for (n = FANOUT; n < size / group.length(); n *= FANOUT) {
+            depth++;
+        }
+        builder = new StringBuilder(size + 256);
+        builder.append(header);
+        repeat(builder, "{\n", depth);
+        for (i = 0; builder.length() + footer.length() + 2 * depth < size; i++) {
+            if (i > 0) {
+                levels = 0;
+                for (n = i; levels < depth && n % FANOUT == 0; n /= FANOUT) {
+                    levels++;
+                }
+                repeat(builder, "}\n", levels);
+                repeat(builder, "{\n", levels);
+            }
+            builder.append(group);
+        }
+        repeat(builder, "}\n", depth);
+        builder.append(footer);
+        return builder.toString();
+    }
+
+    private static void repeat(StringBuilder builder, String str, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append(str);
+        }
+    }
+}
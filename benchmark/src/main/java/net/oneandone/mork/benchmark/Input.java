@@ -0,0 +1,60 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.benchmark;
+
+import net.oneandone.mork.mapping.ExceptionErrorHandler;
+import net.oneandone.mork.mapping.Mapper;
+import net.oneandone.mork.scanner.Position;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/** Loaded mapper and generated input, shared by all benchmark threads. */
+@State(Scope.Benchmark)
+public class Input {
+    @Param({ Corpus.JP, Corpus.INTERPRETER, Corpus.COMPILER })
+    public String grammar;
+
+    /** 1 KB .. 100 MB */
+    @Param({ "1024", "102400", "10485760", "104857600" })
+    public int size;
+
+    public Mapper mapper;
+    public String text;
+    public byte[] utf8;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mapper = new Mapper(Corpus.mapper(grammar), new ExceptionErrorHandler());
+        mapper.load();
+        text = Corpus.generate(grammar, size);
+        utf8 = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public Position position() {
+        return new Position(grammar);
+    }
+
+    public Reader reader() {
+        return new StringReader(text);
+    }
+}
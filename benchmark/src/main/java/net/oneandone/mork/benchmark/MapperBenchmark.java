@@ -0,0 +1,48 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * End-to-end Mapper.run. Run all benchmarks with
+ * <pre>
+ *   java -jar target/benchmarks.jar -prof gc
+ * </pre>
+ * to get allocation bytes/op in addition to throughput. Use -p grammar=jp -p size=1024 to select inputs.
+ * The interpreter and compiler mappers keep the whole syntax tree, the 100 MB inputs need -jvmArgs -Xmx8g.
+ */
+public class MapperBenchmark {
+    @Benchmark
+    public Object[] run(Input input) throws IOException {
+        return input.mapper.run(input.position(), input.reader());
+    }
+
+    /** Scans the input string directly instead of reading it into buffer pages. */
+    @Benchmark
+    public Object[] runCharSequence(Input input) throws IOException {
+        return input.mapper.run(input.position(), input.text, input.mapper.getErrorHandler());
+    }
+
+    /** Scans UTF-8 bytes without decoding them first. */
+    @Benchmark
+    public Object[] runUtf8(Input input) throws IOException {
+        return input.mapper.run(input.position(), ByteBuffer.wrap(input.utf8), input.mapper.getErrorHandler());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.benchmark;
+
+import net.oneandone.mork.mapping.ExceptionErrorHandler;
+import net.oneandone.mork.parser.Parser;
+import net.oneandone.mork.semantics.Oag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/** Parsing with tree construction and full attribution, without the Mapper overhead. */
+public class OagBenchmark {
+    @State(Scope.Thread)
+    public static class Context {
+        public Parser parser;
+        public Oag oag;
+
+        @Setup(Level.Trial)
+        public void setup(Input input) {
+            parser = input.mapper.getParser().newInstance();
+            parser.setErrorHandler(new ExceptionErrorHandler());
+            oag = input.mapper.getSemantics().newInstance();
+        }
+    }
+
+    @Benchmark
+    public Object run(Input input, Context context) throws IOException {
+        return context.parser.run(input.position(), input.reader(), context.oag, null);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.benchmark;
+
+import net.oneandone.mork.mapping.ExceptionErrorHandler;
+import net.oneandone.mork.parser.Parser;
+import net.oneandone.mork.parser.TreeBuilder;
+import net.oneandone.mork.scanner.Scanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/** Scanning and parsing, but no tree construction and no attribution. */
+public class ParserBenchmark {
+    /** Pops the children of every production and creates no nodes. */
+    public static class NullTreeBuilder implements TreeBuilder {
+        private Parser parser;
+
+        @Override
+        public void open(Scanner scanner, Parser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public Object createTerminal(int terminal) {
+            return null;
+        }
+
+        @Override
+        public Object createNonterminal(int production) {
+            for (int i = parser.getTable().getLength(production); i > 0; i--) {
+                parser.pop();
+            }
+            return null;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Context {
+        public Parser parser;
+        public TreeBuilder builder;
+
+        @Setup(Level.Trial)
+        public void setup(Input input) {
+            parser = input.mapper.getParser().newInstance();
+            parser.setErrorHandler(new ExceptionErrorHandler());
+            builder = new NullTreeBuilder();
+        }
+    }
+
+    @Benchmark
+    public Object run(Input input, Context context) throws IOException {
+        return context.parser.run(input.position(), input.reader(), context.builder, null);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.benchmark;
+
+import net.oneandone.mork.scanner.Scanner;
+import net.oneandone.mork.scanner.ScannerFactory;
+import net.oneandone.mork.scanner.TokenCursor;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Scans the whole input with Scanner.next, without parsing. Uses the scanner mode of the parser's start state;
+ * the example grammars need a single mode only. The tokens counter reports tokens/s.
+ */
+public class ScannerBenchmark {
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Benchmark
+    public int next(Input input, Tokens counter) throws IOException {
+        ScannerFactory factory;
+        Scanner scanner;
+        int mode;
+        int count;
+
+        factory = input.mapper.getParser().getScannerFactory();
+        mode = input.mapper.getParser().getTable().getMode(input.mapper.getParser().getTable().getStartState());
+        scanner = factory.newInstance(input.position(), input.reader());
+        count = 0;
+        while (scanner.next(mode) >= 0) {
+            count++;
+        }
+        counter.tokens += count;
+        return count;
+    }
+
+    /** Same as next, but with a TokenCursor in batches of 1024 tokens. */
+    @Benchmark
+    public int fill(Input input, Tokens counter) {
+        TokenCursor cursor;
+        int[] terminals;
+        int[] offsets;
+        int count;
+        int n;
+
+        cursor = input.mapper.getParser().newTokenCursor(input.position(), input.text);
+        terminals = new int[1024];
+        offsets = new int[1024];
+        count = 0;
+        do {
+            n = cursor.fill(terminals, offsets);
+            count += n;
+        } while (n == terminals.length);
+        counter.tokens += count;
+        return count;
+    }
+}
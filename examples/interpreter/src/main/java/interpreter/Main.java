@@ -2,10 +2,12 @@ package interpreter;
 
 import net.oneandone.mork.mapping.Mapper;
 
+import java.io.IOException;
+
 /** Command line invokation. */
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Mapper mapper;
         Object[] result;
         Script script;
@@ -2,6 +2,8 @@ package jp;
 
 import net.oneandone.mork.mapping.Mapper;
 
+import java.io.IOException;
+
 import java.lang.System;
 
 public class Main {
@@ -43,6 +45,12 @@ public class Main {
     private static boolean parse(String name) {
         System.out.println(name + ":");
         // mapper.setLogging(System.out, null);
-        return mapper.run(name) != null;
+        try {
+            mapper.run(name);
+            return true;
+        } catch (IOException e) {
+            // errors have been reported by the mapper's error handler
+            return false;
+        }
     }
 }
@@ -43,6 +43,15 @@ public class Job {
 
     public final int threadCount;
 
+    /** true to compile visit sequences to bytecode */
+    public final boolean visits;
+
+    /** true to merge compatible pda states */
+    public final boolean merge;
+
+    /** true to compress the parser table with default reductions */
+    public final boolean defaultReductions;
+
     public static final String SRC_SUFFIX = ".mapper";
     public static final String LST_SUFFIX = ".lst";
 
@@ -58,6 +67,21 @@ public class Job {
     }
 
     public Job(String outputPathName, int k, int threadCount, boolean listing, String srcName) throws IOException {
+        this(outputPathName, k, threadCount, listing, false, srcName);
+    }
+
+    public Job(String outputPathName, int k, int threadCount, boolean listing, boolean visits, String srcName)
+            throws IOException {
+        this(outputPathName, k, threadCount, listing, visits, false, srcName);
+    }
+
+    public Job(String outputPathName, int k, int threadCount, boolean listing, boolean visits, boolean merge,
+               String srcName) throws IOException {
+        this(outputPathName, k, threadCount, listing, visits, merge, false, srcName);
+    }
+
+    public Job(String outputPathName, int k, int threadCount, boolean listing, boolean visits, boolean merge,
+               boolean defaultReductions, String srcName) throws IOException {
         String baseName;
 
         if (outputPathName == null) {
@@ -70,6 +94,9 @@ public class Job {
         }
         this.k = k;
         this.threadCount = threadCount;
+        this.visits = visits;
+        this.merge = merge;
+        this.defaultReductions = defaultReductions;
         this.source = new File(srcName);
         if (listing) {
             baseName = Strings.removeRightOpt(source.getName(), SRC_SUFFIX);
@@ -88,7 +115,8 @@ public class Job {
             job = (Job) obj;
 
             return  source.equals(job.source)
-                && eq(listing, job.listing) && eq(outputPath, job.outputPath);
+                && eq(listing, job.listing) && eq(outputPath, job.outputPath)
+                && visits == job.visits && merge == job.merge && defaultReductions == job.defaultReductions;
         } else {
             return false;
         }
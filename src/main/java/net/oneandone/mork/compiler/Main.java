@@ -41,7 +41,7 @@ public class Main {
         Main.redirect = redirect;
         try {
             cli = new Cli();
-            cli.addDefault(Main.class, "notused -help -verbose -lst -stat -d=null -k -t -mapper=null file*");
+            cli.addDefault(Main.class, "notused -help -verbose -lst -visits -merge -defaults -stat -d=null -k -t -mapper=null file*");
             cli.run(args);
         } finally {
             Main.redirect = null;
@@ -52,6 +52,9 @@ public class Main {
     private final boolean help;
     private final boolean verbose;
     private final boolean lst;
+    private final boolean visits;
+    private final boolean merge;
+    private final boolean defaults;
     private final boolean stat;
     private final String directory;
     private final int k;
@@ -62,13 +65,16 @@ public class Main {
     private final Output output;
     private Function mapperFn;
 
-    public Main(boolean help, boolean verbose, boolean lst, boolean stat, String directory, int k, int threadCount, String mapper, List<String> files) {
+    public Main(boolean help, boolean verbose, boolean lst, boolean visits, boolean merge, boolean defaults, boolean stat, String directory, int k, int threadCount, String mapper, List<String> files) {
         this.help = help;
         this.verbose = verbose;
         this.lst = lst;
+        this.visits = visits;
+        this.merge = merge;
+        this.defaults = defaults;
         this.stat = stat;
         this.directory = directory;
-        this.k = k;
+        this.k = k == 0 ? 1 : k;
         this.threadCount = threadCount == 0 ?  Runtime.getRuntime().availableProcessors() : threadCount;
         this.mapper = mapper;
         this.files = files;
@@ -110,7 +116,7 @@ public class Main {
         jobs = new Job[files.size()];
         for (int j = 0; j < jobs.length; j++) {
             try {
-                jobs[j] = new Job(outputPath, k, threadCount, listing, files.get(j));
+                jobs[j] = new Job(outputPath, k, threadCount, listing, visits, merge, defaults, files.get(j));
             } catch (IOException e) {
                 output.error(errorPos, e.getMessage());
                 return null;
@@ -124,6 +130,10 @@ public class Main {
     + "option:\n"
     + " -help                 print this message and quit\n"
     + " -lst                  generate mapper listing\n"
+    + " -visits               compile visit sequences to bytecode\n"
+    + " -merge                merge compatible lr states, ignores -t\n"
+    + " -defaults             compress the parser table with default reductions; smaller, but syntax errors\n"
+    + "                       are detected after the reductions and their semantic functions\n"
     + " -d directory          sets the destination directory for class files\n"
     + " -k num                number of lookahead token, default is 1\n"
     + " -t num                parallel threads for pda generation, default is 1\n"
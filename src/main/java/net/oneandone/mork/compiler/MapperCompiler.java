@@ -20,6 +20,7 @@ import net.oneandone.mork.classfile.Bytecodes;
 import net.oneandone.mork.classfile.ClassDef;
 import net.oneandone.mork.classfile.ClassRef;
 import net.oneandone.mork.classfile.Code;
+import net.oneandone.mork.classfile.MethodRef;
 import net.oneandone.mork.classfile.Output;
 import net.oneandone.mork.mapping.Mapper;
 
@@ -43,6 +44,14 @@ public class MapperCompiler implements Bytecodes {
      * @param explicitOutputDir "-d", points to a directory or null.
      */
     public void run(Mapper mapper, String mapperName, File src, File explicitOutputDir) throws IOException {
+        run(mapper, mapperName, src, explicitOutputDir, false);
+    }
+
+    /**
+     * @param visits            "-visits", true to compile the visit sequences to bytecode as well
+     */
+    public void run(Mapper mapper, String mapperName, File src, File explicitOutputDir, boolean visits)
+            throws IOException {
         String baseName;
         File outputDir;  // directory to write all class files to
 
@@ -50,9 +59,11 @@ public class MapperCompiler implements Bytecodes {
         File mapperFile;
         String functionClassName;
         String functionFileBase;
+        File visitsFile;
 
         ClassDef c;
         FunctionCompiler fc;
+        VisitsCompiler vc;
 
         baseName = mapperName.substring(mapperName.lastIndexOf('.') + 1);
           // also ok of idx -1
@@ -63,10 +74,13 @@ public class MapperCompiler implements Bytecodes {
         functionClassName = mapperName + "Functions";
         functionFileBase = new File(outputDir, baseName + "Functions").getPath();
 
+        visitsFile = new File(outputDir, baseName + "Visits.class");
+
         fc = new FunctionCompiler(functionClassName);
         customs[0] = fc;
+        vc = visits ? new VisitsCompiler(mapperName + "Visits") : null;
         output.verbose("translating " + mapperClassName);
-        c = translate(mapper, mapperClassName);
+        c = translate(mapper, mapperClassName, vc);
 
         output.verbose("writing " + mapperFile);
         try {
@@ -79,6 +93,14 @@ public class MapperCompiler implements Bytecodes {
         } catch (IOException e) {
             output.error(functionFileBase.toString(), "write failed: " + e);
         }
+        if (vc != null) {
+            output.verbose("writing " + visitsFile);
+            try {
+                Output.save(vc.translate(mapper.getSemantics().getVisits()), visitsFile);
+            } catch (IOException e) {
+                output.error(visitsFile.toString(), "write failed: " + e);
+            }
+        }
         output.verbose("done");
     }
 
@@ -110,7 +132,8 @@ public class MapperCompiler implements Bytecodes {
         return outputDir;
     }
 
-    private ClassDef translate(Mapper mapper, String className) {
+    /** @param vc null to interpret visit sequences */
+    private ClassDef translate(Mapper mapper, String className, VisitsCompiler vc) {
         ClassDef result;
         ObjectCompiler compiler;
         Code code;
@@ -119,8 +142,8 @@ public class MapperCompiler implements Bytecodes {
         code.locals = 1; // this
         result = createClass(className, code);
         compiler = new ObjectCompiler(code, code.allocate(ClassRef.INT), customs, result);
-        code.emit(LDC, 2);
-        code.emit(ANEWARRAY, ClassRef.OBJECT); // this, the new Mapper
+        code.emit(LDC, vc == null ? 2 : 3);
+        code.emit(ANEWARRAY, ClassRef.OBJECT); // parser, oag and optional compiled visits
         code.emit(DUP);
         code.emit(LDC, 0);
         compiler.run(mapper.getParser());
@@ -129,6 +152,14 @@ public class MapperCompiler implements Bytecodes {
         code.emit(LDC, 1);
         compiler.run(mapper.getSemantics());
         code.emit(AASTORE);
+        if (vc != null) {
+            code.emit(DUP);
+            code.emit(LDC, 2);
+            code.emit(NEW, vc.getClassRef());
+            code.emit(DUP);
+            code.emit(INVOKESPECIAL, MethodRef.constr(vc.getClassRef()));
+            code.emit(AASTORE);
+        }
         code.emit(ARETURN);
         return result;
     }
@@ -150,7 +181,9 @@ public class MapperCompiler implements Bytecodes {
             new String[] { "left", "right" }),
         new GenericCompiler(net.oneandone.mork.parser.ParserTable.class,
             new String[] { "startState", "symbolCount", "eofSymbol", "getStateCount",
-                           "packValues", "lengths", "lefts", "modes" }),
+                           "packValues", "getComb", "lengths", "lefts", "modes" }),
+        new GenericCompiler(net.oneandone.mork.parser.CombTable.class,
+            new String[] { "pack" }),
         new GenericCompiler(ConflictResolver.class,
             new String[] { "lines" }),
         new GenericCompiler(net.oneandone.mork.compiler.Line.class,
@@ -158,13 +191,13 @@ public class MapperCompiler implements Bytecodes {
         new GenericCompiler(net.oneandone.mork.semantics.Attribution.class,
             new String[] { "function", "resultOfs", "resultAttr", "argsOfs", "argsAttr"}),
         new GenericCompiler(net.oneandone.mork.semantics.Oag.class,
-            new String[] { "visits", "internalAttrs" }),
+            new String[] { "visits", "internalAttrs", "symbolTable" }),
         new GenericCompiler(net.oneandone.mork.semantics.Visits.class,
-            new String[] { "visits" }),
+            new String[] { "code", "attributions" }),
         new GenericCompiler(net.oneandone.mork.parser.Parser.class,
             new String[] { "table", "resolvers", "scannerFactory"}),
         new GenericCompiler(net.oneandone.mork.scanner.ScannerFactory.class,
-            new String[] { "start", "modeCount", "table" }),
+            new String[] { "start", "modeCount", "table", "wide" }),
         new GenericCompiler(net.oneandone.sushi.util.IntBitSet.class,
             new String[] { "data" }),
         new GenericCompiler(net.oneandone.sushi.util.IntArrayList.class,
@@ -197,7 +230,7 @@ public class MapperCompiler implements Bytecodes {
     }
 
     public static Integer loadInteger(int i) {
-        return new Integer(i);
+        return Integer.valueOf(i);
     }
 
     public static String saveClass(Class<?> c) {
@@ -88,8 +88,9 @@ public class Mork {
             return false;
         }
         try {
-            result = spec.translate(currentJob.k, currentJob.threadCount, output);
-            compiler.run(result, spec.getMapperName(), currentJob.source, currentJob.outputPath);
+            result = spec.translate(currentJob.k, currentJob.threadCount, currentJob.merge,
+                    currentJob.defaultReductions, output);
+            compiler.run(result, spec.getMapperName(), currentJob.source, currentJob.outputPath, currentJob.visits);
         } catch (GenericException e) {
             output.error(currentJob.source.getName(), e);
             return false;
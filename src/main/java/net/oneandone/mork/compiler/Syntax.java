@@ -67,13 +67,17 @@ public class Syntax {
     /**
      * Translate specification.
      *
+     * @param merge true to build the pda with Pager's state merging
+     * @param defaultReductions true to compress the parser table with default reductions
      * @return null for errors.
      */
-    public Parser translate(int k, int threadCount, Output output) throws GenericException {
+    public Parser translate(int k, int threadCount, boolean merge, boolean defaultReductions, Output output)
+            throws GenericException {
         FABuilder builder;
         long started;
         PDA pda;
         ParserTable parserTable;
+        ParserTable compressed;
         Map<Integer, PrefixSet> firsts;
         ScannerFactory scannerFactory;
         IntBitSet usedTerminals;
@@ -86,8 +90,12 @@ public class Syntax {
         started = System.currentTimeMillis();
         output.verbose("computing firsts");
         firsts = grammar.firsts(k);
-        output.verbose("creating pda, " + threadCount + " threads");
-        pda = PDA.create(grammar, firsts, k, threadCount);
+        if (merge) {
+            output.verbose("creating pda, merging states");
+        } else {
+            output.verbose("creating pda, " + threadCount + " threads");
+        }
+        pda = PDA.create(grammar, firsts, k, threadCount, merge);
         output.verbose("done: " + pda.size() + " states, " + (System.currentTimeMillis() - started) + " ms");
         symbolCount = Math.max(grammar.getSymbolCount(), whiteSymbols.last() + 1);
         handler = new ConflictHandler(grammar);
@@ -149,6 +157,16 @@ public class Syntax {
         usedSymbols.addAll(builder.getInlines());
         grammar.check(grammar.getStart(), usedSymbols, symbolTable.toList());
 
+        // after the scanner, modes need the uncompressed table
+        compressed = parserTable.compress(defaultReductions);
+        if (output.statistics != null) {
+            output.statistics.println();
+            output.statistics.println("parser table: char[" + parserTable.getValueCount() + "], compressed char["
+                    + compressed.getValueCount() + "]");
+        }
+        if (compressed.getValueCount() < parserTable.getValueCount()) {
+            parserTable = compressed;
+        }
         return new Parser(parserTable, resolvers, scannerFactory);
     }
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.compiler;
+
+import net.oneandone.mork.classfile.Access;
+import net.oneandone.mork.classfile.Bytecodes;
+import net.oneandone.mork.classfile.ClassDef;
+import net.oneandone.mork.classfile.ClassRef;
+import net.oneandone.mork.classfile.Code;
+import net.oneandone.mork.classfile.ExceptionInfo;
+import net.oneandone.mork.classfile.FieldRef;
+import net.oneandone.mork.classfile.MethodRef;
+import net.oneandone.mork.reflect.Function;
+import net.oneandone.mork.scanner.TokenText;
+import net.oneandone.mork.semantics.Attribution;
+import net.oneandone.mork.semantics.CompiledVisits;
+import net.oneandone.mork.semantics.Node;
+import net.oneandone.mork.semantics.SemanticError;
+import net.oneandone.mork.semantics.Visits;
+import net.oneandone.sushi.util.IntArrayList;
+
+/**
+ * Generates a CompiledVisits class with a static method for every production. Each method runs the evaluations of
+ * the production's visit sequence: it reads the argument attributes from the nodes, calls the attribution function
+ * directly and stores the result. It returns at the next visit or return instruction; a switch at the beginning of
+ * the method continues after it.
+ */
+public class VisitsCompiler implements Bytecodes {
+    private static final ClassRef NODE_REF = new ClassRef(Node.class);
+    private static final ClassRef OBJECT_ARRAY_REF = new ClassRef("java.lang.Object", 1);
+    private static final ClassRef NODE_ARRAY_REF = new ClassRef(Node.class.getName(), 1);
+    private static final ClassRef THROWABLE_REF = new ClassRef(Throwable.class);
+    private static final ClassRef BASE_REF = new ClassRef(CompiledVisits.class);
+
+    private static final FieldRef ATTRS = new FieldRef(NODE_REF, "attrs", OBJECT_ARRAY_REF);
+    private static final FieldRef CHILDREN = new FieldRef(NODE_REF, "children", NODE_ARRAY_REF);
+    private static final MethodRef MATERIALIZE =
+            MethodRef.meth(new ClassRef(TokenText.class), ClassRef.OBJECT, "materialize", ClassRef.OBJECT);
+    private static final MethodRef FAILED =
+            MethodRef.meth(BASE_REF, new ClassRef(SemanticError.class), "failed", NODE_REF, THROWABLE_REF);
+
+    // locals of the production methods
+    private static final int LV_NODE = 0;
+    private static final int LV_OFS = 1;
+    private static final int LV_THROWABLE = 2;
+
+    private final ClassRef destRef;
+
+    public VisitsCompiler(String className) {
+        this.destRef = new ClassRef(className);
+    }
+
+    public ClassRef getClassRef() {
+        return destRef;
+    }
+
+    public ClassDef translate(Visits[] visits) {
+        ClassDef result;
+        int production;
+
+        result = new ClassDef(destRef, BASE_REF);
+        result.addConstructor(Access.fromArray(Access.PUBLIC), ClassRef.NONE, constructor());
+        result.addMethod(Access.fromArray(Access.PUBLIC), ClassRef.INT, "visit",
+                new ClassRef[] { ClassRef.INT, NODE_REF, ClassRef.INT }, dispatch(visits.length));
+        for (production = 0; production < visits.length; production++) {
+            result.addMethod(Access.fromArray(Access.PRIVATE, Access.STATIC), ClassRef.INT, methodName(production),
+                    new ClassRef[] { NODE_REF, ClassRef.INT }, production(visits[production]));
+        }
+        return result;
+    }
+
+    private static String methodName(int production) {
+        return "p" + production;
+    }
+
+    private static Code constructor() {
+        Code code;
+
+        code = new Code();
+        code.locals = 1;
+        code.emit(ALOAD, 0);
+        code.emit(INVOKESPECIAL, MethodRef.constr(BASE_REF, ClassRef.NONE));
+        code.emit(RETURN);
+        return code;
+    }
+
+    /** visit(production, node, ofs): calls the method of the production */
+    private Code dispatch(int productions) {
+        Code code;
+        int fixup;
+        IntArrayList labels;
+        int production;
+        int deflt;
+
+        code = new Code();
+        code.locals = 4;  // this, production, node, ofs
+        code.emit(ILOAD, 1);
+        fixup = code.declareFixup();
+        labels = new IntArrayList();
+        for (production = 0; production < productions; production++) {
+            labels.add(code.currentLabel());
+            code.emit(ALOAD, 2);
+            code.emit(ILOAD, 3);
+            code.emit(INVOKESTATIC, MethodRef.meth(destRef, ClassRef.INT, methodName(production), NODE_REF, ClassRef.INT));
+            code.emit(IRETURN);
+        }
+        deflt = code.currentLabel();
+        illegal(code, "illegal production");
+        code.fixup(fixup, TABLESWITCH, deflt, 0, productions - 1, labels);
+        return code;
+    }
+
+    private static Code production(Visits visits) {
+        Code code;
+        int[] instructions;
+        Attribution[] attributions;
+        int fixup;
+        IntArrayList entries;
+        IntArrayList labels;
+        int i;
+        int instruction;
+        int deflt;
+        int handler;
+
+        instructions = visits.getCode();
+        attributions = visits.getAttributions();
+        code = new Code();
+        code.locals = 3;  // node, ofs, throwable
+        code.emit(ILOAD, LV_OFS);
+        fixup = code.declareFixup();
+        entries = new IntArrayList();
+        for (i = 0; i <= instructions.length; i++) {
+            entries.add(-1);
+        }
+        entries.set(0, code.currentLabel());
+        for (i = 0; i < instructions.length; i++) {
+            instruction = instructions[i];
+            if ((instruction & 3) == Visits.EVAL) {
+                eval(attributions[instruction >> 2], code);
+            } else {
+                // visits and returns are left to Node.compute to keep one stack frame per node
+                code.emit(LDC, i);
+                code.emit(IRETURN);
+                entries.set(i + 1, code.currentLabel());
+            }
+        }
+        code.emit(LDC, instructions.length);
+        code.emit(IRETURN);
+        deflt = code.currentLabel();
+        illegal(code, "illegal visit ofs");
+        labels = new IntArrayList();
+        for (i = 0; i < entries.size(); i++) {
+            labels.add(entries.get(i) == -1 ? deflt : entries.get(i));
+        }
+        code.fixup(fixup, TABLESWITCH, deflt, 0, labels.size() - 1, labels);
+
+        handler = code.currentLabel();
+        code.emit(ASTORE, LV_THROWABLE);
+        code.emit(ALOAD, LV_NODE);
+        code.emit(ALOAD, LV_THROWABLE);
+        code.emit(INVOKESTATIC, FAILED);
+        code.emit(ATHROW);
+        code.exceptions.add(new ExceptionInfo(0, handler, handler, THROWABLE_REF));
+        return code;
+    }
+
+    /** node.get(resultOfs).attrs[resultAttr] = function(node.get(argsOfs[i]).attrs[argsAttr[i]] ...) */
+    private static void eval(Attribution attribution, Code code) {
+        Function function;
+        Class<?>[] types;
+        Class<?> result;
+        int[] argsOfs;
+        int[] argsAttr;
+        int i;
+
+        function = attribution.getFunction();
+        types = function.getParameterTypes();
+        argsOfs = attribution.getArgsOfs();
+        argsAttr = attribution.getArgsAttr();
+        attrs(attribution.getResultOfs(), code);
+        code.emit(LDC, attribution.getResultAttr());
+        for (i = 0; i < argsOfs.length; i++) {
+            attrs(argsOfs[i], code);
+            code.emit(LDC, argsAttr[i]);
+            code.emit(AALOAD);
+            code.emit(INVOKESTATIC, MATERIALIZE);
+            Util.unwrap(types[i], code);
+        }
+        function.translate(code);
+        result = function.getReturnType();
+        if (result == Void.TYPE) {
+            code.emit(LDC, (String) null);  // void function
+        } else if (result.isPrimitive()) {
+            code.emit(INVOKESTATIC, MethodRef.meth(new ClassRef(ClassRef.wrappedType(result)),
+                    new ClassRef(ClassRef.wrappedType(result)), "valueOf", new ClassRef(result)));
+        }
+        code.emit(AASTORE);
+    }
+
+    /** pushes the attributes of the specified node */
+    private static void attrs(int ofs, Code code) {
+        code.emit(ALOAD, LV_NODE);
+        if (ofs != -1) {
+            code.emit(GETFIELD, CHILDREN);
+            code.emit(LDC, ofs);
+            code.emit(AALOAD);
+        }
+        code.emit(GETFIELD, ATTRS);
+    }
+
+    private static void illegal(Code code, String message) {
+        ClassRef except;
+
+        except = new ClassRef(IllegalStateException.class);
+        code.emit(NEW, except);
+        code.emit(DUP);
+        code.emit(LDC, message);
+        code.emit(INVOKESPECIAL, MethodRef.constr(except, new ClassRef[] { ClassRef.STRING }));
+        code.emit(ATHROW);
+    }
+}
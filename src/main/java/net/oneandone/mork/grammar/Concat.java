@@ -16,26 +16,16 @@
 package net.oneandone.mork.grammar;
 
 public class Concat {
+    private final PrefixEncoding encoding;
     private final int k;
-    private final long firstFullValue;
     private final PrefixSet done;
     private PrefixSet todo;
 
-    public Concat(int k) {
+    public Concat(PrefixEncoding encoding, int k) {
+        this.encoding = encoding;
         this.k = k;
-        this.firstFullValue = exp(Prefix.BASE, k - 1);
-        this.done = new PrefixSet();
-        this.todo = PrefixSet.one();
-    }
-
-    private static long exp(int x, int y) {
-        long result;
-
-        result = 1;
-        for (int i = 1; i <= y; i++) {
-            result *= x;
-        }
-        return result;
+        this.done = new PrefixSet(encoding);
+        this.todo = PrefixSet.one(encoding);
     }
 
     /** true when done */
@@ -45,13 +35,24 @@ public class Concat {
         Prefix l;
         Prefix r;
 
-        next = new PrefixSet();
-        l = todo.iterator();
+        if (k == 1) {
+            if (todo.isEmpty()) {
+                return true;
+            }
+            // todo is empty or contains the empty prefix only, thus done gets all non-empty prefixes of op
+            done.addAllNonEmpty(op);
+            if (!op.containsEmpty()) {
+                todo = new PrefixSet(encoding);
+            }
+            return todo.isEmpty();
+        }
+        next = new PrefixSet(encoding);
+        l = todo.unsorted();
         while (l.step()) {
-            r = op.iterator();
+            r = op.unsorted();
             while (r.step()) {
-                tmp = Prefix.concat(l.data, r.data, k);
-                if (tmp >= firstFullValue) {
+                tmp = encoding.concat(l.data, r.data, k);
+                if (encoding.isFull(tmp, k)) {
                     done.add(tmp);
                 } else {
                     next.add(tmp);
@@ -326,24 +326,26 @@ public class Grammar extends GrammarBase {
         int oldSize;
         boolean modified;
         Concat concat;
+        PrefixEncoding encoding;
 
+        encoding = PrefixEncoding.create(getSymbolCount() + 1 /* eof */, k);
         result = new HashMap<Integer, PrefixSet>();
         terminals = new IntBitSet();
         nonterminals = new IntBitSet();
         getTerminals(terminals);
         getNonterminals(nonterminals);
         for (int symbol = terminals.first(); symbol != -1; symbol = terminals.next(symbol)) {
-            result.put(symbol, PrefixSet.one(symbol));
+            result.put(symbol, PrefixSet.one(encoding, symbol));
         }
         for (int symbol = nonterminals.first(); symbol != -1; symbol = nonterminals.next(symbol)) {
-            result.put(symbol, new PrefixSet());
+            result.put(symbol, new PrefixSet(encoding));
         }
         do {
             modified = false;
             for (int p = 0; p < getProductionCount(); p++) {
                 first = result.get(getLeft(p));
                 oldSize = first.size();
-                concat = new Concat(k);
+                concat = new Concat(encoding, k);
                 for (int ofs = 0, length = getLength(p); ofs < length; ofs++) {
                     if (concat.with(result.get(getRight(p, ofs)))) {
                         break;
@@ -19,38 +19,10 @@ import net.oneandone.mork.misc.StringArrayList;
 
 /** Element in a prefix set, and an iterator. Immutable, heavily shared between PrefixSets. */
 public class Prefix {
-    public static final int BASE = 512;
-
-    public static long pack(int ... symbols) {
-        long data;
-
-        data = 0;
-        for (int symbol : symbols) {
-            data = data * BASE + pack(symbol);
-        }
-        return data;
-    }
-
-    public static long pack(int symbol) {
-        if (symbol >= BASE - 1) {
-            throw new IllegalArgumentException("" + symbol);
-        }
-        return symbol + 1;
-    }
-
-    public static int[] unpack(long data) {
-        int[] result;
-
-        result = new int[size(data)];
-        for (int i = result.length - 1; i >= 0; i--) {
-            result[i] = (int) (data % BASE) - 1;
-            data /= BASE;
-        }
-        return result;
-    }
-
-    //--
-
+    private final PrefixEncoding encoding;
+    /** behind current prefix - first bit to check for next element */
+    private int bit;
+    private final long[] bits;
     /** behind current prefix - first index to check for next element */
     private int index;
     private final long[] table;
@@ -61,88 +33,58 @@ public class Prefix {
     //--
 
     /** Constructor for PrefixSet only */
-    Prefix(long[] table, int size) {
+    Prefix(PrefixEncoding encoding, long[] bits, long[] table) {
+        this.encoding = encoding;
+        this.bit = 0;
+        this.bits = bits;
+        this.index = 0;
         this.table = table;
-        this.index = 0; // we don't have empty tables
     }
 
     //-- iterator
 
     public boolean step() {
-        for (; index < table.length; index++) {
-            if (table[index] != PrefixSet.FREE) {
-                data = table[index++];
+        int word;
+        long remaining;
+
+        for (word = bit >>> 6; word < bits.length; word++) {
+            remaining = bits[word];
+            if (word == bit >>> 6) {
+                remaining &= -1L << bit;
+            }
+            if (remaining != 0) {
+                data = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                bit = (int) data + 1;
                 return true;
             }
         }
+        bit = bits.length << 6;
+        if (table != null) {
+            for (; index < table.length; index++) {
+                if (table[index] != PrefixSet.FREE) {
+                    data = table[index++];
+                    return true;
+                }
+            }
+        }
         return false;
     }
 
     //-- prefix methods
 
     public int first() {
-        long remaining;
-        long next;
-
-        remaining = data;
-        while (true) {
-            next = remaining / BASE;
-            if (next == 0) {
-                return (int) remaining - 1;
-            }
-            remaining = next;
-        }
-    }
-
-    public static long concat(long leftPrefix, long rightPrefix, int k) {
-        int leftSize;
-        int rightSize;
-        long newData;
-        int newSize;
-        int count;
-
-        if (leftPrefix == 0) {
-            return rightPrefix;
-        }
-        if (rightPrefix == 0) {
-            return leftPrefix;
-        }
-        leftSize = size(leftPrefix);
-        if (leftSize == k) {
-            return leftPrefix;
-        }
-        rightSize = Prefix.size(rightPrefix);
-        newData = leftPrefix;
-        newSize = Math.min(k, leftSize + rightSize);
-        count = newSize - leftSize;
-        for (int i = count; i > 0; i--) {
-            newData *= BASE;
-        }
-        long tmp = rightPrefix;
-        for (int i = rightSize - count; i > 0; i--) {
-            tmp /= BASE;
-        }
-        return newData + tmp;
+        return encoding.first(data);
     }
 
     public int size() {
-        return size(data);
-    }
-
-    public static int size(long prefix) {
-        int size;
-
-        for (size = 0; prefix != 0; prefix /= BASE) {
-            size++;
-        }
-        return size;
+        return encoding.size(data);
     }
 
     public int[] follows(int first) {
         int[] terminals;
         int[] symbols;
 
-        symbols = unpack(data);
+        symbols = encoding.unpack(data);
         if (symbols.length > 0) {
             if (symbols[0] == first) {
                 terminals = new int[symbols.length - 1];
@@ -160,7 +102,7 @@ public class Prefix {
         StringBuilder builder;
 
         builder = new StringBuilder();
-        for (int symbol : unpack(data)) {
+        for (int symbol : encoding.unpack(data)) {
             builder.append(' ');
             builder.append(symbol);
         }
@@ -171,7 +113,7 @@ public class Prefix {
         boolean first;
 
         first = true;
-        for (int symbol : unpack(data)) {
+        for (int symbol : encoding.unpack(data)) {
             if (first) {
                 first = false;
             } else {
@@ -0,0 +1,255 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.grammar;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps prefixes to longs. Symbols are packed as digits of a width that suffices for all symbols of the grammar;
+ * a digit is the symbol + 1, 0 is the empty prefix. If k digits don't fit into a long, prefixes with more
+ * than one symbol are interned instead and represented by ids starting at getBase(). Ids are assigned in the order
+ * threads create them, thus they must not determine any output order.
+ */
+public class PrefixEncoding {
+    /** @param symbolCount including eof */
+    public static PrefixEncoding create(int symbolCount, int k) {
+        int width;
+
+        if (k < 1) {
+            throw new IllegalArgumentException("k: " + k);
+        }
+        width = Math.max(1, 32 - Integer.numberOfLeadingZeros(symbolCount));
+        return new PrefixEncoding(width, width * k > 63);
+    }
+
+    /** bits per symbol */
+    private final int width;
+    private final long base;
+    private final long mask;
+
+    /** null if prefixes are packed */
+    private final ConcurrentMap<Key, Long> ids;
+    private final ConcurrentMap<Long, int[]> prefixes;
+
+    public PrefixEncoding(int width, boolean interned) {
+        this.width = width;
+        this.base = 1L << width;
+        this.mask = base - 1;
+        this.ids = interned ? new ConcurrentHashMap<Key, Long>() : null;
+        this.prefixes = interned ? new ConcurrentHashMap<Long, int[]>() : null;
+    }
+
+    /** prefixes below this value are empty or contain a single symbol */
+    public long getBase() {
+        return base;
+    }
+
+    public boolean isInterned() {
+        return ids != null;
+    }
+
+    public long pack(int ... symbols) {
+        long data;
+
+        if (ids != null && symbols.length > 1) {
+            for (int symbol : symbols) {
+                pack(symbol);
+            }
+            return intern(symbols.clone());
+        }
+        data = 0;
+        for (int symbol : symbols) {
+            data = (data << width) | pack(symbol);
+        }
+        return data;
+    }
+
+    public long pack(int symbol) {
+        if (symbol < 0 || symbol >= mask) {
+            throw new IllegalArgumentException("" + symbol);
+        }
+        return symbol + 1;
+    }
+
+    public int[] unpack(long data) {
+        int[] result;
+
+        if (data >= base && ids != null) {
+            return lookup(data).clone();
+        }
+        result = new int[size(data)];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = (int) (data & mask) - 1;
+            data >>>= width;
+        }
+        return result;
+    }
+
+    public int size(long data) {
+        if (data >= base && ids != null) {
+            return lookup(data).length;
+        }
+        return (64 - Long.numberOfLeadingZeros(data) + width - 1) / width;
+    }
+
+    public int first(long data) {
+        if (data >= base && ids != null) {
+            return lookup(data)[0];
+        }
+        return (int) (data >>> (width * (size(data) - 1))) - 1;
+    }
+
+    /** @return true if the prefix has k symbols */
+    public boolean isFull(long data, int k) {
+        if (ids != null) {
+            return size(data) >= k;
+        }
+        return data >= 1L << (width * (k - 1));
+    }
+
+    public long concat(long leftPrefix, long rightPrefix, int k) {
+        int leftSize;
+        int rightSize;
+        int count;
+        int[] left;
+        int[] right;
+        int[] result;
+
+        if (leftPrefix == 0) {
+            return rightPrefix;
+        }
+        if (rightPrefix == 0) {
+            return leftPrefix;
+        }
+        leftSize = size(leftPrefix);
+        if (leftSize == k) {
+            return leftPrefix;
+        }
+        rightSize = size(rightPrefix);
+        count = Math.min(k, leftSize + rightSize) - leftSize;
+        if (ids != null) {
+            left = unpack(leftPrefix);
+            right = unpack(rightPrefix);
+            result = Arrays.copyOf(left, leftSize + count);
+            System.arraycopy(right, 0, result, leftSize, count);
+            return intern(result);
+        }
+        return (leftPrefix << (width * count)) | (rightPrefix >>> (width * (rightSize - count)));
+    }
+
+    /** @return prefixes of a PrefixSet table without free slots, ordered by their symbols */
+    public long[] sort(long[] table) {
+        Long[] sorted;
+        long[] result;
+        int count;
+
+        count = 0;
+        for (long prefix : table) {
+            if (prefix != PrefixSet.FREE) {
+                count++;
+            }
+        }
+        sorted = new Long[count];
+        count = 0;
+        for (long prefix : table) {
+            if (prefix != PrefixSet.FREE) {
+                sorted[count++] = prefix;
+            }
+        }
+        Arrays.sort(sorted, new Comparator<Long>() {
+            @Override
+            public int compare(Long left, Long right) {
+                return compareSymbols(symbols(left), symbols(right));
+            }
+        });
+        result = new long[sorted.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sorted[i];
+        }
+        return result;
+    }
+
+    //--
+
+    private int[] symbols(long data) {
+        if (data >= base && ids != null) {
+            return lookup(data);
+        }
+        return unpack(data);
+    }
+
+    private static int compareSymbols(int[] left, int[] right) {
+        int length;
+
+        length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            if (left[i] != right[i]) {
+                return left[i] < right[i] ? -1 : 1;
+            }
+        }
+        return left.length - right.length;
+    }
+
+    private long intern(int[] symbols) {
+        Key key;
+        Long id;
+
+        key = new Key(symbols);
+        id = ids.get(key);
+        if (id == null) {
+            synchronized (this) {
+                id = ids.get(key);
+                if (id == null) {
+                    id = base + ids.size();
+                    prefixes.put(id, symbols);
+                    ids.put(key, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    private int[] lookup(long id) {
+        int[] result;
+
+        result = prefixes.get(id);
+        if (result == null) {
+            throw new IllegalArgumentException("" + id);
+        }
+        return result;
+    }
+
+    private static class Key {
+        private final int[] symbols;
+
+        public Key(int[] symbols) {
+            this.symbols = symbols;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(symbols, ((Key) obj).symbols);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(symbols);
+        }
+    }
+}
@@ -51,42 +51,83 @@ public class PrefixSet {
 
     public static final long FREE = -1;
 
-    public static PrefixSet one(int ... symbols) {
+    /** upper limit for the bitmap size */
+    public static final int MAX_BITS = 1 << 16;
+
+    public static PrefixSet one(PrefixEncoding encoding, int ... symbols) {
         PrefixSet result;
 
-        result = new PrefixSet();
+        result = new PrefixSet(encoding);
         result.addUnpacked(symbols);
         return result;
     }
 
     //--
 
+    /** all sets compared or combined with this set must have the same encoding */
+    private final PrefixEncoding encoding;
+
+    /**
+     * Prefixes with a packed value below bits.length * 64, bit 0 is the empty prefix. Covers all prefixes with at most
+     * one symbol as long as the base is within MAX_BITS. The size is rounded up to whole words, so for encodings
+     * narrower than 6 bits, short multi-symbol prefixes are kept here as well.
+     */
+    private final long[] bits;
+
+    /** prefixes below this value go into bits; interned ids never do, iterator() has to sort them */
+    private final long limit;
+
+    /** Prefixes not covered by bits; null until the first one is added */
     private long[] table;
-    private int size;
+    private int tableSize;
     private int collisions;
 
-    public PrefixSet() {
-        this.table = new long[SIZES[0]];
-        Arrays.fill(table, FREE);
+    /** total number of prefixes */
+    private int size;
+
+    public PrefixSet(PrefixEncoding encoding) {
+        this.encoding = encoding;
+        this.bits = new long[(int) ((Math.min(encoding.getBase(), MAX_BITS) + 63) / 64)];
+        this.limit = encoding.isInterned() ? Math.min(encoding.getBase(), MAX_BITS) : bits.length << 6;
+        this.table = null;
     }
 
     public PrefixSet(PrefixSet orig) {
-        this.table = new long[orig.table.length];
+        this.encoding = orig.encoding;
+        this.bits = orig.bits.clone();
+        this.limit = orig.limit;
+        this.table = orig.table == null ? null : orig.table.clone();
+        this.tableSize = orig.tableSize;
         this.size = orig.size;
-        System.arraycopy(orig.table, 0, table, 0, table.length);
     }
 
+    /**
+     * Interned ids depend on the order in which threads created them, so the longer prefixes of interned encodings
+     * are iterated in symbol order. Thus listings and parser tables don't change with the number of threads.
+     */
     public Prefix iterator() {
-        return new Prefix(table, size);
+        if (table != null && encoding.isInterned()) {
+            return new Prefix(encoding, bits, encoding.sort(table));
+        }
+        return unsorted();
     }
 
-    /** average comparisons for successfull search */
+    /** Faster iterator for code that only builds sets; the order of interned prefixes is arbitrary. */
+    Prefix unsorted() {
+        return new Prefix(encoding, bits, table);
+    }
+
+    public PrefixEncoding getEncoding() {
+        return encoding;
+    }
+
+    /** average comparisons for successfull search in the hash table; 1.0 if there's no table */
     public double hashQuality() {
-        return ((double) collisions + size) / size;
+        return tableSize == 0 ? 1.0 : ((double) collisions + tableSize) / tableSize;
     }
 
     public double load() {
-        return (double) size / table.length;
+        return table == null ? 0.0 : (double) tableSize / table.length;
     }
 
     public int size() {
@@ -98,10 +139,36 @@ public class PrefixSet {
     }
 
     public boolean addUnpacked(int ... symbols) {
-        return add(Prefix.pack(symbols));
+        return add(encoding.pack(symbols));
     }
 
     public boolean add(long prefix) {
+        int word;
+        long mask;
+
+        if (prefix < limit) {
+            word = (int) prefix >>> 6;
+            mask = 1L << prefix;
+            if ((bits[word] & mask) != 0) {
+                return false;
+            }
+            bits[word] |= mask;
+            size++;
+            return true;
+        }
+        if (table == null) {
+            table = new long[SIZES[0]];
+            Arrays.fill(table, FREE);
+        }
+        if (tableAdd(prefix)) {
+            size++;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private boolean tableAdd(long prefix) {
         long cmp;
         long[] old;
 
@@ -109,15 +176,15 @@ public class PrefixSet {
             cmp = table[hash];
             if (cmp == FREE) {
                 table[hash] = prefix;
-                if (size++ >= table.length * 3 / 4) {
+                if (tableSize++ >= table.length * 3 / 4) {
                     old = table;
-                    size = 0;
+                    tableSize = 0;
                     collisions = 0;
                     table = new long[nextSize(old.length)];
                     Arrays.fill(table, FREE);
                     for (long p : old) {
                         if (p != FREE) {
-                            add(p);
+                            tableAdd(p);
                         }
                     }
                 }
@@ -131,17 +198,85 @@ public class PrefixSet {
     }
 
     public void addAll(PrefixSet set) {
-        Prefix prefix;
+        long added;
 
-        prefix = set.iterator();
-        while (prefix.step()) {
-            add(prefix.data);
+        for (int i = 0; i < bits.length; i++) {
+            added = set.bits[i] & ~bits[i];
+            if (added != 0) {
+                bits[i] |= added;
+                size += Long.bitCount(added);
+            }
+        }
+        if (set.table != null) {
+            for (long p : set.table) {
+                if (p != FREE) {
+                    add(p);
+                }
+            }
+        }
+    }
+
+    /** Adds all prefixes of set except the empty prefix; used to concat with k = 1 */
+    void addAllNonEmpty(PrefixSet set) {
+        boolean empty;
+
+        empty = (bits[0] & 1) != 0;
+        addAll(set);
+        if (!empty && (bits[0] & 1) != 0) {
+            bits[0] &= ~1L;
+            size--;
+        }
+    }
+
+    public boolean containsEmpty() {
+        return (bits[0] & 1) != 0;
+    }
+
+    public boolean containsAll(PrefixSet set) {
+        if (set.size > size) {
+            return false;
+        }
+        for (int i = 0; i < bits.length; i++) {
+            if ((set.bits[i] & ~bits[i]) != 0) {
+                return false;
+            }
+        }
+        if (set.table != null) {
+            for (long p : set.table) {
+                if (p != FREE && notContains(p)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean intersects(PrefixSet set) {
+        for (int i = 0; i < bits.length; i++) {
+            if ((set.bits[i] & bits[i]) != 0) {
+                return true;
+            }
+        }
+        if (set.tableSize > tableSize) {
+            return set.intersectsTable(this);
+        } else {
+            return intersectsTable(set);
         }
     }
 
+    private boolean intersectsTable(PrefixSet set) {
+        if (set.table != null) {
+            for (long p : set.table) {
+                if (p != FREE && !notContains(p)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public boolean equals(Object o) {
         PrefixSet set;
-        Prefix prefix;
 
         /* No o == this check: PefixSets *are* shared when shifting, but in this case, the cores always differ */
         if (o instanceof PrefixSet) {
@@ -149,19 +284,31 @@ public class PrefixSet {
             if (set.size != size) {
                 return false;
             }
-            prefix = set.iterator();
-            while (prefix.step()) {
-                if (notContains(prefix.data)) {
+            for (int i = 0; i < bits.length; i++) {
+                if (set.bits[i] != bits[i]) {
                     return false;
                 }
             }
+            if (set.table != null) {
+                for (long p : set.table) {
+                    if (p != FREE && notContains(p)) {
+                        return false;
+                    }
+                }
+            }
             return true;
         }
         return false;
     }
 
     public int hashCode() {
-        return size;
+        long result;
+
+        result = size;
+        for (int i = 0; i < bits.length; i++) {
+            result = result * 31 + bits[i];
+        }
+        return (int) (result ^ (result >>> 32));
     }
 
     public String toString(StringArrayList symbolTable) {
@@ -212,6 +359,12 @@ public class PrefixSet {
     private boolean notContains(long prefix) {
         long cmp;
 
+        if (prefix < limit) {
+            return (bits[(int) prefix >>> 6] & (1L << prefix)) == 0;
+        }
+        if (table == null) {
+            return true;
+        }
         for (int hash = Prefix.hashFirst(prefix, table.length); true; hash = Prefix.hashNext(prefix, hash, table.length)) {
             cmp = table[hash];
             if (cmp == FREE) {
@@ -222,4 +375,4 @@ public class PrefixSet {
             }
         }
     }
-}
\ No newline at end of file
+}
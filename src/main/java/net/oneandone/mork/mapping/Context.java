@@ -0,0 +1,34 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.mapping;
+
+import net.oneandone.mork.parser.Parser;
+import net.oneandone.mork.semantics.Oag;
+
+/**
+ * Mutable state of a running mapper: the parser stack and the node pools of the attribution. Tables are shared
+ * with the Mapper that created the context, thus, contexts are cheap. A context is used by one thread at a time;
+ * Mapper keeps idle contexts for re-use.
+ */
+public class Context {
+    public final Parser parser;
+    public final Oag oag;
+
+    public Context(Parser parser, Oag oag) {
+        this.parser = parser.newInstance();
+        this.oag = oag.newInstance();
+    }
+}
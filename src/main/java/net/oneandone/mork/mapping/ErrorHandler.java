@@ -28,10 +28,22 @@ import java.io.IOException;
  * or 2) collecting errors and throwing an exception in the close method.
  */
 public interface ErrorHandler {
+    /** Called when a run starts, before any of the methods below. */
+    default void open() {
+    }
+
     void lexicalError(Position pos) throws IOException;
     void syntaxError(Position pos, IntBitSet shiftable) throws IOException;
     void semanticError(Position pos, Exception e) throws IOException;
 
+    /**
+     * The parser stack exceeded its maximum depth, usually caused by deeply nested input. Reported as a
+     * semantic error unless overridden.
+     */
+    default void stackOverflow(Position pos, int maxDepth) throws IOException {
+        semanticError(pos, new IllegalStateException("input nested too deeply, parser stack exceeds " + maxDepth));
+    }
+
     /** Throws an exception when one of the above methods was called. */
     void close() throws IOException;
 }
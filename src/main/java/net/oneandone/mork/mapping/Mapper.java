@@ -16,21 +16,42 @@
 package net.oneandone.mork.mapping;
 
 import net.oneandone.mork.parser.Parser;
+import net.oneandone.mork.scanner.Buffer;
+import net.oneandone.mork.scanner.CharSequenceInput;
+import net.oneandone.mork.scanner.Input;
 import net.oneandone.mork.scanner.Position;
+import net.oneandone.mork.scanner.Utf8Input;
+import net.oneandone.mork.semantics.CompiledVisits;
 import net.oneandone.mork.semantics.Node;
 import net.oneandone.mork.semantics.Oag;
+import net.oneandone.mork.semantics.RecordHandler;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Maps streams into Objects by scanning. Implements the analyzing parts a compiler or any other text processing
@@ -38,14 +59,26 @@ import java.lang.reflect.Method;
  * for visualization.
  *
  * Technically, a <code>Mapper</code> is a translated <code>Mapping</code>.
+ *
+ * Mappers are thread-safe: tables are loaded once and shared, the state of a running mapper is kept in a
+ * Context that's private to the running thread. Configure the mapper before running it concurrently, and make sure
+ * the error handler keeps errors apart for concurrent runs: PrintWriterErrorHandler remembers failures per thread
+ * until the run closes it, so one failing input doesn't fail other runs.
  */
 public class Mapper implements Serializable {
     private final String name;
-    private Parser parser;  // null: not loaded
+    private volatile Parser parser;  // null: not loaded
     private Oag oag;  // undefined if not loaded
+
+    /** Idle contexts, ready for re-use. Not serialized, re-created by readObject. */
+    private transient Queue<Context> contexts;
     private PrintWriter logParsing;
     private PrintWriter logAttribution;
     private Object environment;  // default environment is null
+    private int maxDepth;
+    private int recordSymbol;
+    private RecordHandler recordHandler;  // null: no streaming
+    private int[] poolSizes;  // null: default node pools
 
     /** never null */
     private ErrorHandler errorHandler;
@@ -79,17 +112,27 @@ public class Mapper implements Serializable {
         this.errorHandler = errorHandler;
         this.logParsing = null;
         this.logAttribution = null;
+        this.maxDepth = Parser.DEFAULT_MAX_DEPTH;
+        this.recordSymbol = -1;
+        this.recordHandler = null;
+        this.poolSizes = null;
+        this.contexts = new ConcurrentLinkedQueue<Context>();
     }
 
     /**
      * Creates a new mapper instance.
-     * Shares common data (esp. scanner and parser table with this instance.
+     * Shares common data (esp. scanner and parser table with this instance. Not needed to run a mapper in
+     * multiple threads, but handy to get a mapper with a different configuration.
      */
     public Mapper newInstance() {
         Mapper mapper;
 
         mapper = new Mapper(name, parser.newInstance(), oag.newInstance());
         mapper.setLogging(logParsing, logAttribution);
+        mapper.setMaxDepth(maxDepth);
+        mapper.recordSymbol = recordSymbol;
+        mapper.recordHandler = recordHandler;
+        mapper.setPoolSizes(poolSizes);
         return mapper;
     }
 
@@ -105,6 +148,12 @@ public class Mapper implements Serializable {
      * @throws IllegalStateException to indicate a class loading problem
      */
     public void load() {
+        if (!isLoaded()) {
+            doLoad();
+        }
+    }
+
+    private synchronized void doLoad() {
         ClassLoader loader;
         Class c;
         Method m;
@@ -131,8 +180,12 @@ public class Mapper implements Serializable {
         } catch (IllegalAccessException e) {
             throw new IllegalStateException(e.getMessage(), e);
         }
-        parser = (Parser) tables[0];
+        // assign parser last, it indicates that the mapper is loaded
         oag = (Oag) tables[1];
+        if (tables.length > 2) {
+            oag.setCompiledVisits((CompiledVisits) tables[2]);
+        }
+        parser = (Parser) tables[0];
     }
 
     /**
@@ -174,6 +227,113 @@ public class Mapper implements Serializable {
         this.logAttribution = logAttribution;
     }
 
+    /**
+     * Defines the max depth of the parser stack. Deeper nested input is reported as a stack overflow to the
+     * error handler.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("" + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Node pool sizes for contexts created from now on, so that their first runs don't have to allocate nodes.
+     *
+     * @param sizes as returned by getPoolSizes, typically saved from a previous run; null for defaults
+     */
+    public void setPoolSizes(int[] sizes) {
+        this.poolSizes = sizes;
+    }
+
+    /**
+     * Node pools grow with the number of nodes needed, up to NodeFactory.MAX_POOL per production.
+     *
+     * @return the largest pool sizes of all idle contexts; null if no context has run yet
+     */
+    public int[] getPoolSizes() {
+        int[] result;
+        int[] sizes;
+        int i;
+
+        result = null;
+        for (Context context : contexts) {
+            sizes = context.oag.getPoolSizes();
+            if (sizes != null) {
+                if (result == null) {
+                    result = sizes;
+                } else {
+                    for (i = 0; i < result.length; i++) {
+                        result[i] = Math.max(result[i], sizes[i]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** @return number of nodes taken from the node pools of all idle contexts */
+    public long getPoolHits() {
+        long result;
+
+        result = 0;
+        for (Context context : contexts) {
+            result += context.oag.getPoolHits();
+        }
+        return result;
+    }
+
+    /**
+     * @return number of nodes allocated by all idle contexts because their pool was empty; no longer grows
+     *         when the pools have adapted to the input
+     */
+    public long getPoolMisses() {
+        long result;
+
+        result = 0;
+        for (Context context : contexts) {
+            result += context.oag.getPoolMisses();
+        }
+        return result;
+    }
+
+    /**
+     * Streams the attributes of all nodes for the specified nonterminal to the handler, as soon as they are
+     * computed. See Oag.setRecordHandler for details.
+     *
+     * @param symbol  nonterminal name as used in the syntax file; null to disable streaming
+     * @param handler null to disable streaming
+     * @throws IllegalArgumentException if the grammar has no such nonterminal
+     */
+    public void setRecordHandler(String symbol, RecordHandler handler) {
+        int number;
+
+        if (symbol == null || handler == null) {
+            this.recordSymbol = -1;
+            this.recordHandler = null;
+            return;
+        }
+        load();
+        number = oag.lookupSymbol(symbol);
+        if (!isNonterminal(number)) {
+            throw new IllegalArgumentException("no such nonterminal: " + symbol);
+        }
+        this.recordSymbol = number;
+        this.recordHandler = handler;
+    }
+
+    private boolean isNonterminal(int symbol) {
+        if (symbol != -1) {
+            for (int left : parser.getTable().getLefts()) {
+                if (left == symbol) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public Parser getParser() {
         load();
         return parser;
@@ -198,39 +358,200 @@ public class Mapper implements Serializable {
         return run(file.toURI().toURL().toString(), new FileReader(file));
     }
 
+    public Object[] run(Path path) throws IOException {
+        return run(path.toUri().toURL().toString(), new InputStreamReader(Files.newInputStream(path)));
+    }
+
+    /**
+     * Maps the file into memory and scans it without copying it into buffer pages. Suitable for large files
+     * in single-byte encodings or UTF-8. UTF-8 files are scanned byte-wise, without a decoder.
+     */
+    public Object[] run(Path path, Charset charset) throws IOException {
+        Position position;
+
+        position = new Position(path.toUri().toURL().toString());
+        return attrs(run(position, CharSequenceInput.map(position, path, charset), errorHandler), errorHandler);
+    }
+
     public Object[] run(String context, Reader src) throws IOException {
         return run(new Position(context), src);
     }
 
+    public Object[] run(String context, CharSequence src) throws IOException {
+        return run(new Position(context), src, errorHandler);
+    }
+
+    public Object[] run(Position position, Reader src) throws IOException {
+        return run(position, src, errorHandler);
+    }
+
     /**
      * Reads an stream, creates the syntax tree, computes the attributes and returns
-     * the attributes of the start symbol. Main functionality of this class, all other
-     * <code>run</code> methods use it.  Reports errors to the registered errorHander;
-     * if there is no errorHandler defined, this method defines a PrintWriterErrorHandler
-     * for System.err.
+     * the attributes of the start symbol. Reports errors to the specified errorHander.
      *
      * @param  src when the method returns, src is always closed.
      * @return never null
      * @throws IOException to report errors
      */
-    public Object[] run(Position position, Reader src) throws IOException {
+    public Object[] run(Position position, Reader src, ErrorHandler errorHandler) throws IOException {
+        Object[] attrs;
+
+        attrs = run(position, new Buffer(position, src), errorHandler);
+        src.close();
+        return attrs(attrs, errorHandler);
+    }
+
+    /** Like the Reader variant, but scans directly over the specified characters. */
+    public Object[] run(Position position, CharSequence src, ErrorHandler errorHandler) throws IOException {
+        return attrs(run(position, new CharSequenceInput(position, src), errorHandler), errorHandler);
+    }
+
+    /** Like the Reader variant, but scans the specified UTF-8 bytes without decoding them into a buffer. */
+    public Object[] run(Position position, ByteBuffer utf8, ErrorHandler errorHandler) throws IOException {
+        return attrs(run(position, new Utf8Input(position, utf8), errorHandler), errorHandler);
+    }
+
+    /**
+     * Main functionality of this class, all other <code>run</code> methods use it.
+     *
+     * @return attributes of the root node, null if an error has been reported
+     */
+    private Object[] run(Position position, Input src, ErrorHandler errorHandler) throws IOException {
+        Context context;
         Node node;
+        Object[] attrs;
 
         load();
-        oag.setEnvironment(environment);
-        oag.setLogging(logAttribution);
-        parser.setErrorHandler(errorHandler);
-        // casting is ok: the Treebuilder used in a mapper always creates Nodes
-        node = (Node) parser.run(position, src, oag, logParsing);
-        src.close();
+        errorHandler.open();
+        context = allocate();
+        try {
+            context.oag.setEnvironment(environment);
+            context.oag.setLogging(logAttribution);
+            context.parser.setErrorHandler(errorHandler);
+            context.parser.setMaxDepth(maxDepth);
+            context.oag.setRecordHandler(recordSymbol, recordHandler);
+            // casting is ok: the Treebuilder used in a mapper always creates Nodes
+            node = (Node) context.parser.run(position, src, context.oag, logParsing);
+            if (node == null) {
+                return null;
+            }
+            // copy, so the root can go back to its pool while the context is still ours
+            attrs = node.attrs.clone();
+            node.free();
+            return attrs;
+        } finally {
+            context.oag.close();
+            contexts.offer(context);
+        }
+    }
+
+    private static Object[] attrs(Object[] attrs, ErrorHandler errorHandler) throws IOException {
         errorHandler.close();
-        if (node == null) {
+        if (attrs == null) {
             throw new IllegalStateException("errorHandler.close expected to throw an exception");
         } else {
-            return node.attrs;
+            return attrs;
+        }
+    }
+
+    //-- running the mapper on many sources
+
+    /**
+     * Maps all sources with the specified number of threads.
+     *
+     * @return number of sources that failed
+     */
+    public int runAll(Collection<Path> sources, int threads, ResultHandler handler) throws InterruptedException {
+        ExecutorService executor;
+
+        executor = Executors.newFixedThreadPool(threads);
+        try {
+            return runAll(sources, executor, handler);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Maps all sources by submitting them to the specified executor, e.g. a fixed thread pool or one that creates
+     * a virtual thread per task. Threads share the tables of this mapper and re-use contexts. Every source is
+     * reported to the handler in completion order, errors - including Errors like StackOverflowError - are reported
+     * for each source instead of aborting the whole run. The registered error handler is not used: every source gets
+     * its own ExceptionErrorHandler.
+     *
+     * @return number of sources that failed
+     */
+    public int runAll(Collection<Path> sources, Executor executor, ResultHandler handler) throws InterruptedException {
+        CompletionService<Result> service;
+        Result result;
+        int failed;
+
+        load();
+        service = new ExecutorCompletionService<Result>(executor);
+        for (final Path source : sources) {
+            service.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return runOne(source);
+                }
+            });
+        }
+        failed = 0;
+        for (int i = sources.size(); i > 0; i--) {
+            try {
+                result = service.take().get();
+            } catch (ExecutionException e) {
+                // not reached: runOne reports all exceptions and errors as failed results
+                throw new IllegalStateException(e.getCause());
+            }
+            if (result.failed()) {
+                failed++;
+            }
+            handler.result(result);
+        }
+        return failed;
+    }
+
+    private Result runOne(Path source) {
+        Reader src;
+        Object[] attrs;
+
+        try {
+            src = new InputStreamReader(Files.newInputStream(source));
+            try {
+                attrs = run(new Position(source.toUri().toURL().toString()), src, new ExceptionErrorHandler());
+            } finally {
+                // run closes src only if it succeeds
+                src.close();
+            }
+            return new Result(source, attrs, null);
+        } catch (IOException e) {
+            return new Result(source, null, e);
+        } catch (RuntimeException e) {
+            return new Result(source, null, e);
+        } catch (Error e) {
+            // e.g. a StackOverflowError in a semantic function; other sources may still succeed
+            return new Result(source, null, e);
         }
     }
 
+    /** Returns an idle context or creates a new one. The caller has to hand it back to contexts when done. */
+    private Context allocate() {
+        Context context;
+
+        context = contexts.poll();
+        if (context == null) {
+            context = new Context(parser, oag);
+            context.oag.setPoolSizes(poolSizes);
+        }
+        return context;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        contexts = new ConcurrentLinkedQueue<Context>();
+    }
+
     /**
      * Read-eval-print loop. Loop terminates if the specified end string is
      * entered. This method is handy to test mappers interactively.
@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.io.PrintWriter;
 
 /**
- * ErrorHandler that prints messages to the PrintWriter specified in the constructor.
+ * ErrorHandler that prints messages to the PrintWriter specified in the constructor. Failures are remembered
+ * per thread from open to close, so a handler can be shared by concurrent runs without one failing run
+ * affecting the others.
  */
 public class PrintWriterErrorHandler implements ErrorHandler {
     /**
@@ -31,19 +33,26 @@ public class PrintWriterErrorHandler implements ErrorHandler {
      */
     private final PrintWriter dest;
 
-    private boolean failed;
+    /** true if the current thread reported an error since its last open */
+    private final ThreadLocal<Boolean> failed;
 
     public PrintWriterErrorHandler(PrintWriter dest) {
         if (dest == null) {
             throw new IllegalArgumentException();
         }
         this.dest = dest;
-        this.failed = false;
+        this.failed = new ThreadLocal<Boolean>();
+    }
+
+    @Override
+    public void open() {
+        // a run that threw before close must not fail the next run on this thread
+        failed.remove();
     }
 
     protected void report(String pos, String message) {
         dest.println(pos + ": " + message);
-        failed = true;
+        failed.set(Boolean.TRUE);
     }
 
     @Override
@@ -71,7 +80,11 @@ public class PrintWriterErrorHandler implements ErrorHandler {
 
     @Override
     public void close() throws IOException {
-        if (failed) {
+        Boolean result;
+
+        result = failed.get();
+        failed.remove();
+        if (result != null) {
             throw new IOException("mapping failed");
         }
     }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.mapping;
+
+import java.nio.file.Path;
+
+/** Outcome of mapping one source with <code>Mapper.runAll</code>. */
+public class Result {
+    public final Path source;
+
+    /** attributes of the start symbol; null if mapping failed */
+    public final Object[] attrs;
+
+    /** null if mapping succeeded; an Error like StackOverflowError if mapping this source broke the vm limits */
+    public final Throwable error;
+
+    public Result(Path source, Object[] attrs, Throwable error) {
+        if ((attrs == null) == (error == null)) {
+            throw new IllegalArgumentException();
+        }
+        this.source = source;
+        this.attrs = attrs;
+        this.error = error;
+    }
+
+    public boolean failed() {
+        return error != null;
+    }
+
+    @Override
+    public String toString() {
+        return failed() ? source + ": " + error.getMessage() : source.toString();
+    }
+}
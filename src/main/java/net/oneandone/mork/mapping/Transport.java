@@ -20,6 +20,7 @@ import net.oneandone.mork.reflect.Function;
 import net.oneandone.mork.reflect.Method;
 import net.oneandone.mork.reflect.Option;
 import net.oneandone.mork.semantics.Attribute;
+import net.oneandone.mork.semantics.Node;
 import net.oneandone.mork.semantics.Type;
 
 import java.util.ArrayList;
@@ -144,7 +145,7 @@ public class Transport {
         List<Object> result;
 
         result = new ArrayList<Object>();
-        if (obj != Option.TAG) {
+        if (obj != Option.TAG && obj != Node.STREAMED) {
             result.add(obj);
         }
         return result;
@@ -154,7 +155,9 @@ public class Transport {
         List<Object> result;
 
         result = new ArrayList<Object>();
-        result.add(obj);
+        if (obj != Node.STREAMED) {
+            result.add(obj);
+        }
         return result;
     }
 
@@ -164,13 +167,15 @@ public class Transport {
     }
 
     public static Object sequenceAndOption(Object list, Object obj) {
-        if (obj != Option.TAG) {
+        if (obj != Option.TAG && obj != Node.STREAMED) {
             ((List<Object>) list).add(obj);
         }
         return list;
     }
     public static Object sequenceAndValue(Object list, Object obj) {
-        ((List<Object>) list).add(obj);
+        if (obj != Node.STREAMED) {
+            ((List<Object>) list).add(obj);
+        }
         return list;
     }
     public static Object sequenceAndSequence(Object list, Object operand) {
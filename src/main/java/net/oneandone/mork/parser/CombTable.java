@@ -0,0 +1,448 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.parser;
+
+import net.oneandone.sushi.util.IntArrayList;
+import net.oneandone.sushi.util.IntBitSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compressed representation of a ParserTable. Actions on terminals are stored by row displacement: the rows of all
+ * states are overlaid in one array, owners tells which state an entry belongs to. Terminals without entry get the
+ * state's default action, which is an error, or optionally the most frequent reduction of the state. Gotos on
+ * nonterminals are stored by column displacement the same way, with the most frequent target state as default.
+ * Lookups are O(1).
+ *
+ * Default reductions make the table smaller, but they replace errors: a syntax error is detected after these
+ * reductions, in a state without default reduction, and the reductions run their semantic functions on invalid
+ * input. Like yacc, the parser never shifts an illegal terminal.
+ */
+public class CombTable {
+    /** Marks free slots in owners; larger than any state or symbol number. */
+    private static final char FREE = (char) 0xffff;
+
+    /** [state] offset of the state's row in actions */
+    private final int[] bases;
+
+    /** [state] action for terminals without entry */
+    private final char[] defaults;
+
+    /** action values of all states, overlaid */
+    private final char[] actions;
+
+    /** [idx] state the action belongs to, FREE if none */
+    private final char[] owners;
+
+    /** [symbol] offset of the nonterminal's column in gotos; -1 for terminals */
+    private final int[] gotoBases;
+
+    /** [symbol] target state for states without entry */
+    private final char[] gotoDefaults;
+
+    /** target states of all nonterminals, overlaid */
+    private final char[] gotos;
+
+    /** [idx] nonterminal the goto belongs to, FREE if none */
+    private final char[] gotoOwners;
+
+    /** Constructor for compiled objects. */
+    public CombTable(String[] packed) {
+        StringBuilder builder;
+        String str;
+        int stateCount;
+        int symbolCount;
+        int actionCount;
+        int gotoCount;
+        int ofs;
+
+        builder = new StringBuilder();
+        for (String chunk : packed) {
+            builder.append(chunk);
+        }
+        str = builder.toString();
+        stateCount = readInt(str, 0);
+        symbolCount = readInt(str, 2);
+        actionCount = readInt(str, 4);
+        gotoCount = readInt(str, 6);
+        ofs = 8;
+        bases = readInts(str, ofs, stateCount);
+        ofs += stateCount * 2;
+        defaults = readChars(str, ofs, stateCount);
+        ofs += stateCount;
+        actions = readChars(str, ofs, actionCount);
+        ofs += actionCount;
+        owners = readChars(str, ofs, actionCount);
+        ofs += actionCount;
+        gotoBases = readInts(str, ofs, symbolCount);
+        ofs += symbolCount * 2;
+        gotoDefaults = readChars(str, ofs, symbolCount);
+        ofs += symbolCount;
+        gotos = readChars(str, ofs, gotoCount);
+        ofs += gotoCount;
+        gotoOwners = readChars(str, ofs, gotoCount);
+        ofs += gotoCount;
+        if (ofs != str.length()) {
+            throw new IllegalArgumentException("packed table corrupted");
+        }
+    }
+
+    private CombTable(int[] bases, char[] defaults, char[] actions, char[] owners,
+                      int[] gotoBases, char[] gotoDefaults, char[] gotos, char[] gotoOwners) {
+        this.bases = bases;
+        this.defaults = defaults;
+        this.actions = actions;
+        this.owners = owners;
+        this.gotoBases = gotoBases;
+        this.gotoDefaults = gotoDefaults;
+        this.gotos = gotos;
+        this.gotoOwners = gotoOwners;
+    }
+
+    /**
+     * @param values dense table as stored by ParserTable, [state * symbolCount + symbol]
+     * @param lefts  left-hand-side of productions, defines the nonterminals
+     * @param defaultReductions  true to use the most frequent reduction of a state as its default action,
+     *                           false to keep errors exact
+     */
+    public static CombTable create(char[] values, int stateCount, int symbolCount, int[] lefts,
+                                   boolean defaultReductions) {
+        IntBitSet nonterminals;
+        int[] counts;
+        IntArrayList positions;
+        IntArrayList entries;
+        List<int[]> rows;
+        List<char[]> rowValues;
+        int[] bases;
+        char[] defaults;
+        int[] gotoBases;
+        char[] gotoDefaults;
+        Comb actions;
+        Comb gotos;
+        int state;
+        int symbol;
+        int count;
+        int max;
+        int value;
+
+        nonterminals = new IntBitSet();
+        for (int left : lefts) {
+            nonterminals.add(left);
+        }
+
+        // actions
+        counts = new int[lefts.length];
+        positions = new IntArrayList();
+        entries = new IntArrayList();
+        rows = new ArrayList<int[]>();
+        rowValues = new ArrayList<char[]>();
+        defaults = new char[stateCount];
+        max = 0;
+        for (state = 0; state < stateCount; state++) {
+            defaults[state] = (char) (defaultReductions
+                    ? defaultReduce(values, state * symbolCount, symbolCount, nonterminals, counts)
+                    : ParserTable.NOT_SET);
+            positions.clear();
+            entries.clear();
+            for (symbol = 0; symbol < symbolCount; symbol++) {
+                value = values[state * symbolCount + symbol];
+                if (!nonterminals.contains(symbol) && value != ParserTable.NOT_SET && value != defaults[state]) {
+                    positions.add(symbol);
+                    entries.add(value);
+                }
+            }
+            rows.add(positions.toArray());
+            rowValues.add(toChars(entries));
+            max = Math.max(max, positions.size());
+        }
+        bases = new int[stateCount];
+        actions = new Comb();
+        // largest rows first, they are the hardest to fit
+        for (count = max; count >= 0; count--) {
+            for (state = 0; state < stateCount; state++) {
+                if (rows.get(state).length == count) {
+                    bases[state] = actions.add(state, rows.get(state), rowValues.get(state));
+                }
+            }
+        }
+
+        // gotos
+        counts = new int[stateCount];
+        gotoBases = new int[symbolCount];
+        gotoDefaults = new char[symbolCount];
+        gotos = new Comb();
+        for (symbol = 0; symbol < symbolCount; symbol++) {
+            if (!nonterminals.contains(symbol)) {
+                gotoBases[symbol] = -1;
+                continue;
+            }
+            gotoDefaults[symbol] = (char) defaultGoto(values, symbol, stateCount, symbolCount, counts);
+            positions.clear();
+            entries.clear();
+            for (state = 0; state < stateCount; state++) {
+                value = values[state * symbolCount + symbol];
+                if (value != ParserTable.NOT_SET && ParserTable.getOperand(value) != gotoDefaults[symbol]) {
+                    positions.add(state);
+                    entries.add(ParserTable.getOperand(value));
+                }
+            }
+            gotoBases[symbol] = gotos.add(symbol, positions.toArray(), toChars(entries));
+        }
+        return new CombTable(bases, defaults, actions.values(symbolCount), actions.owners(symbolCount),
+                gotoBases, gotoDefaults, gotos.values(stateCount), gotos.owners(stateCount));
+    }
+
+    /** @return most frequent reduction on terminals of the state; NOT_SET if the state does not reduce */
+    private static int defaultReduce(char[] values, int ofs, int symbolCount, IntBitSet nonterminals, int[] counts) {
+        int symbol;
+        int value;
+        int prod;
+        int result;
+
+        result = ParserTable.NOT_SET;
+        for (symbol = 0; symbol < symbolCount; symbol++) {
+            value = values[ofs + symbol];
+            if (ParserTable.getAction(value) == Parser.REDUCE && !nonterminals.contains(symbol)) {
+                prod = ParserTable.getOperand(value);
+                counts[prod]++;
+                if (result == ParserTable.NOT_SET || counts[prod] > counts[ParserTable.getOperand(result)]) {
+                    result = value;
+                }
+            }
+        }
+        for (symbol = 0; symbol < symbolCount; symbol++) {
+            value = values[ofs + symbol];
+            if (ParserTable.getAction(value) == Parser.REDUCE) {
+                counts[ParserTable.getOperand(value)] = 0;
+            }
+        }
+        return result;
+    }
+
+    /** @return most frequent target state of the nonterminal; 0 if there's no goto at all */
+    private static int defaultGoto(char[] values, int symbol, int stateCount, int symbolCount, int[] counts) {
+        int state;
+        int value;
+        int target;
+        int result;
+
+        result = -1;
+        for (state = 0; state < stateCount; state++) {
+            value = values[state * symbolCount + symbol];
+            if (value != ParserTable.NOT_SET) {
+                target = ParserTable.getOperand(value);
+                counts[target]++;
+                if (result == -1 || counts[target] > counts[result]) {
+                    result = target;
+                }
+            }
+        }
+        for (state = 0; state < stateCount; state++) {
+            value = values[state * symbolCount + symbol];
+            if (value != ParserTable.NOT_SET) {
+                counts[ParserTable.getOperand(value)] = 0;
+            }
+        }
+        return result == -1 ? 0 : result;
+    }
+
+    private static char[] toChars(IntArrayList lst) {
+        char[] result;
+        int i;
+
+        result = new char[lst.size()];
+        for (i = 0; i < result.length; i++) {
+            result[i] = (char) lst.get(i);
+        }
+        return result;
+    }
+
+    //--
+
+    public int getStateCount() {
+        return bases.length;
+    }
+
+    /** @return number of chars occupied by the table, ints count twice */
+    public int size() {
+        return bases.length * 3 + actions.length * 2 + gotoBases.length * 3 + gotos.length * 2;
+    }
+
+    public int lookup(int state, int terminal) {
+        int idx;
+
+        idx = bases[state] + terminal;
+        return owners[idx] == state ? actions[idx] : defaults[state];
+    }
+
+    /** @return true if the action is stored explicitly, i.e. it's not the state's default action */
+    public boolean contains(int state, int terminal) {
+        return owners[bases[state] + terminal] == state;
+    }
+
+    public int lookupGoto(int state, int nonterminal) {
+        int idx;
+
+        idx = gotoBases[nonterminal] + state;
+        return gotoOwners[idx] == nonterminal ? gotos[idx] : gotoDefaults[nonterminal];
+    }
+
+    public boolean isNonterminal(int symbol) {
+        return gotoBases[symbol] != -1;
+    }
+
+    //-- serialization
+
+    public String[] pack() {
+        StringBuilder builder;
+        List<String> lst;
+
+        builder = new StringBuilder();
+        writeInt(builder, bases.length);
+        writeInt(builder, gotoBases.length);
+        writeInt(builder, actions.length);
+        writeInt(builder, gotos.length);
+        for (int base : bases) {
+            writeInt(builder, base);
+        }
+        builder.append(defaults);
+        builder.append(actions);
+        builder.append(owners);
+        for (int base : gotoBases) {
+            writeInt(builder, base);
+        }
+        builder.append(gotoDefaults);
+        builder.append(gotos);
+        builder.append(gotoOwners);
+        lst = new ArrayList<String>();
+        ParserTable.split(builder, ParserTable.MAX_UTF8_LENGTH, lst);
+        return lst.toArray(new String[lst.size()]);
+    }
+
+    private static void writeInt(StringBuilder dest, int value) {
+        dest.append((char) (value >>> 16));
+        dest.append((char) value);
+    }
+
+    private static int readInt(String src, int ofs) {
+        return src.charAt(ofs) << 16 | src.charAt(ofs + 1);
+    }
+
+    private static int[] readInts(String src, int ofs, int count) {
+        int[] result;
+        int i;
+
+        result = new int[count];
+        for (i = 0; i < count; i++) {
+            result[i] = readInt(src, ofs + i * 2);
+        }
+        return result;
+    }
+
+    private static char[] readChars(String src, int ofs, int count) {
+        char[] result;
+
+        result = new char[count];
+        src.getChars(ofs, ofs + count, result, 0);
+        return result;
+    }
+
+    //--
+
+    /** Overlays sparse vectors, first fit. */
+    private static class Comb {
+        private char[] values;
+        private char[] owners;
+        /** lowest free index */
+        private int free;
+        private int maxBase;
+
+        public Comb() {
+            values = new char[1024];
+            owners = new char[1024];
+            Arrays.fill(owners, FREE);
+            free = 0;
+            maxBase = 0;
+        }
+
+        /** @param positions ascending */
+        public int add(int owner, int[] positions, char[] entries) {
+            int base;
+            int i;
+            int last;
+
+            if (positions.length == 0) {
+                return 0;
+            }
+            for (base = Math.max(0, free - positions[0]); !fits(base, positions); base++) {
+                // search
+            }
+            last = base + positions[positions.length - 1];
+            if (last >= owners.length) {
+                grow(Math.max(last + 1, owners.length * 2));
+            }
+            for (i = 0; i < positions.length; i++) {
+                owners[base + positions[i]] = (char) owner;
+                values[base + positions[i]] = entries[i];
+            }
+            while (free < owners.length && owners[free] != FREE) {
+                free++;
+            }
+            maxBase = Math.max(maxBase, base);
+            return base;
+        }
+
+        private boolean fits(int base, int[] positions) {
+            int idx;
+
+            for (int position : positions) {
+                idx = base + position;
+                if (idx < owners.length && owners[idx] != FREE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow(int length) {
+            int old;
+
+            old = owners.length;
+            values = Arrays.copyOf(values, length);
+            owners = Arrays.copyOf(owners, length);
+            Arrays.fill(owners, old, length, FREE);
+        }
+
+        /** @param width number of positions in a vector; the result is large enough for every base */
+        public char[] values(int width) {
+            return Arrays.copyOf(values, maxBase + width);
+        }
+
+        public char[] owners(int width) {
+            int old;
+            char[] result;
+
+            old = owners.length;
+            result = Arrays.copyOf(owners, maxBase + width);
+            if (result.length > old) {
+                Arrays.fill(result, old, result.length, FREE);
+            }
+            return result;
+        }
+    }
+}
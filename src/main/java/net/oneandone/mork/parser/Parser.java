@@ -17,17 +17,23 @@ package net.oneandone.mork.parser;
 
 import net.oneandone.mork.compiler.ConflictResolver;
 import net.oneandone.mork.mapping.ErrorHandler;
+import net.oneandone.mork.scanner.Buffer;
+import net.oneandone.mork.scanner.CharSequenceInput;
+import net.oneandone.mork.scanner.Input;
 import net.oneandone.mork.scanner.Position;
 import net.oneandone.mork.scanner.Scanner;
 import net.oneandone.mork.scanner.ScannerFactory;
+import net.oneandone.mork.scanner.TokenCursor;
 import net.oneandone.mork.semantics.SemanticError;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.util.Arrays;
 
 /**
- * Push down automaton, performing LR parsing
+ * Push down automaton, performing LR parsing. Tables are immutable and shared with all instances created by
+ * newInstance, but the stack is not. Thus, an instance must not be used by more than one thread at a time.
  */
 
 public class Parser {
@@ -36,12 +42,20 @@ public class Parser {
     private final ScannerFactory scannerFactory;
     private ErrorHandler errorHandler;
 
-    // TODO: dynamically grow the Stack
-    private static final int STACK_SIZE = 10240;
+    /** Initial stack size; the stack grows on demand. */
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    /** Larger stacks are dropped after a run to free memory allocated for an unusually deep input. */
+    private static final int KEEP_STACK_SIZE = 4096;
+
+    public static final int DEFAULT_MAX_DEPTH = 1 << 20;
+
+    /** Stack depth to report stack overflow errors for. */
+    private int maxDepth;
 
     private int top;          // index of the topmost state, might be -1
-    private final int[] states;
-    private final Object[] nodes;
+    private int[] states;
+    private Object[] nodes;
 
     /** operand is one of the SPECIAL_xx values */
     public static final char SPECIAL = 0;
@@ -68,9 +82,10 @@ public class Parser {
         this.resolvers = resolvers;
         this.scannerFactory = scannerFactory;
         this.errorHandler = null;
+        this.maxDepth = DEFAULT_MAX_DEPTH;
 
-        states = new int[STACK_SIZE];
-        nodes = new Object[STACK_SIZE];
+        states = new int[INITIAL_STACK_SIZE];
+        nodes = new Object[INITIAL_STACK_SIZE];
         top = -1;
     }
 
@@ -78,15 +93,57 @@ public class Parser {
         return table;
     }
 
+    public ScannerFactory getScannerFactory() {
+        return scannerFactory;
+    }
+
     public void setErrorHandler(ErrorHandler errorHandler) {
         this.errorHandler = errorHandler;
     }
 
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /** @param maxDepth  max number of stack elements before a stack overflow is reported */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("" + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /** @return number of stack elements currently allocated */
+    public int getStackCapacity() {
+        return states.length;
+    }
+
+    /** Creates a parser with its own stack. */
     public Parser newInstance() {
-        return new Parser(table, resolvers, scannerFactory);
+        Parser parser;
+
+        parser = new Parser(table, resolvers, scannerFactory);
+        parser.setMaxDepth(maxDepth);
+        return parser;
+    }
+
+    /** Tokens of src, scanned in the mode of the start state. */
+    public TokenCursor newTokenCursor(Position position, CharSequence src) {
+        return new TokenCursor(scannerFactory, table.getMode(table.getStartState()), position, src);
     }
 
     public Object run(Position position, Reader src, TreeBuilder treeBuilder, PrintWriter verbose) throws IOException {
+        return run(position, new Buffer(position, src), treeBuilder, verbose);
+    }
+
+    public Object run(Position position, CharSequence src, TreeBuilder treeBuilder, PrintWriter verbose) throws IOException {
+        return run(position, new CharSequenceInput(position, src), treeBuilder, verbose);
+    }
+
+    /**
+     * @param position  start position of src, used to report io errors
+     */
+    public Object run(Position position, Input src, TreeBuilder treeBuilder, PrintWriter verbose) throws IOException {
         int terminal;
         int production;
         int state;
@@ -97,7 +154,7 @@ public class Parser {
         int operand;
 
         try {
-            scanner = scannerFactory.newInstance(position, src);
+            scanner = scannerFactory.newInstance(src);
             treeBuilder.open(scanner, this);
             try {
                 state = table.getStartState();
@@ -143,6 +200,10 @@ public class Parser {
                                     verbose.print(stateStr());
                                     verbose.println("shift " + ParserTable.getOperand(value));
                                 }
+                                if (top + 1 >= maxDepth) {
+                                    stackOverflow(scanner);
+                                    return null;
+                                }
                                 state = ParserTable.getOperand(value);
                                 push(state, treeBuilder.createTerminal(terminal));
                                 break lookupLoop;
@@ -160,6 +221,10 @@ public class Parser {
                                     return null;
                                 }
                                 // state != getState() because createNonterminnal removes nodes
+                                if (top + 1 >= maxDepth) {
+                                    stackOverflow(scanner);
+                                    return null;
+                                }
                                 state = table.lookupShift(getState(), production);
                                 push(state, node);
                                 break;
@@ -175,13 +240,32 @@ public class Parser {
                     }
                 }
             } finally {
-                top = -1;
+                clear();
             }
         } catch (IOException e) {
             throw new IOException(position.toString() + ": io error: " + e.getMessage(), e);
         }
     }
 
+    private void stackOverflow(Scanner scanner) throws IOException {
+        Position pos;
+
+        pos = new Position();
+        scanner.getPosition(pos);
+        errorHandler.stackOverflow(pos, maxDepth);
+    }
+
+    /** Empties the stack and shrinks it if it has grown beyond KEEP_STACK_SIZE */
+    private void clear() {
+        if (states.length > KEEP_STACK_SIZE) {
+            states = new int[INITIAL_STACK_SIZE];
+            nodes = new Object[INITIAL_STACK_SIZE];
+        } else {
+            Arrays.fill(nodes, null);
+        }
+        top = -1;
+    }
+
     private String stateStr() {
         StringBuilder builder;
 
@@ -212,7 +296,18 @@ public class Parser {
 
     public void push(int state, Object node) {
         top++;
+        if (top == states.length) {
+            grow();
+        }
         states[top] = state;
         nodes[top] = node;
     }
+
+    private void grow() {
+        int size;
+
+        size = Math.max(states.length + 1, Math.min(states.length * 2, maxDepth));
+        states = Arrays.copyOf(states, size);
+        nodes = Arrays.copyOf(nodes, size);
+    }
 }
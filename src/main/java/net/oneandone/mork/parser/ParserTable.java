@@ -27,7 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Shift-Reduce-Table realized by an array.
+ * Shift-Reduce-Table realized by an array, or by a CombTable if that's smaller.
  */
 public class ParserTable implements Serializable {
     private static final int ACTION_BITS = 2;
@@ -50,10 +50,13 @@ public class ParserTable implements Serializable {
 
     /**
      * Values in the table. [state * symbolCount + symbol]. Each value
-     * stores   operand &lt;&lt; ACTION_BITS | action.
+     * stores   operand &lt;&lt; ACTION_BITS | action. Null if compressed.
      */
     private final char[] values;
 
+    /** Compressed values, null if values are stored in the array. */
+    private final CombTable comb;
+
     /** length of productions; [production] */
     private final int[] lengths;
 
@@ -69,10 +72,16 @@ public class ParserTable implements Serializable {
      * Constructor for compiled object.
      */
     public ParserTable(char startState, int symbolCount, int eofSymbol, char[] values, int[] lengths, int[] lefts, char[] modes) {
+        this(startState, symbolCount, eofSymbol, values, null, lengths, lefts, modes);
+    }
+
+    private ParserTable(char startState, int symbolCount, int eofSymbol, char[] values, CombTable comb,
+                        int[] lengths, int[] lefts, char[] modes) {
         this.startState = startState;
         this.symbolCount = symbolCount;
         this.eofSymbol = eofSymbol;
         this.values = values;
+        this.comb = comb;
         this.lengths = lengths;
         this.lefts = lefts;
         this.modes = modes;
@@ -81,8 +90,18 @@ public class ParserTable implements Serializable {
     public ParserTable(
             char startState, int symbolCount, int eofSymbol, int stateCount,
             String[] packedValues, int[] lengths, int[] lefts, char[] modes) {
-        this(startState, symbolCount, eofSymbol, new char[stateCount * symbolCount], lengths, lefts, modes);
-        unpackValues(packedValues);
+        this(startState, symbolCount, eofSymbol, stateCount, packedValues, null, lengths, lefts, modes);
+    }
+
+    /** @param comb null to unpack the values, packedValues is null otherwise */
+    public ParserTable(
+            char startState, int symbolCount, int eofSymbol, int stateCount,
+            String[] packedValues, CombTable comb, int[] lengths, int[] lefts, char[] modes) {
+        this(startState, symbolCount, eofSymbol, comb == null ? new char[stateCount * symbolCount] : null, comb,
+                lengths, lefts, modes);
+        if (comb == null) {
+            unpackValues(packedValues);
+        }
     }
 
     public ParserTable(int startState, int stateCount, int symbolCount, int eofSymbol, Grammar grm, char[] modes) throws GenericException {
@@ -97,6 +116,7 @@ public class ParserTable implements Serializable {
         this.eofSymbol = eofSymbol;
         this.modes = modes;
 
+        comb = null;
         values = new char[stateCount * symbolCount];
         for (i = 0; i < values.length; i++) {
             values[i] = createValue(Parser.SPECIAL, Parser.SPECIAL_ERROR);
@@ -120,8 +140,14 @@ public class ParserTable implements Serializable {
         return eofSymbol;
     }
 
+    /** @return number of chars occupied by the table */
     public int getValueCount() {
-        return values.length;
+        return values != null ? values.length : comb.size();
+    }
+
+    /** Null if the table is not compressed. */
+    public CombTable getComb() {
+        return comb;
     }
 
     public void setModes(char[] modes) {
@@ -195,9 +221,23 @@ public class ParserTable implements Serializable {
 
     //-- create a representation to store the table effiziently
 
+    /**
+     * Call when the table is complete. Modes have to be computed before, they need the terminals of every state,
+     * which are not preserved by default reductions.
+     *
+     * @param defaultReductions see CombTable
+     * @return compressed table with the same behavior for the parser, except for the errors replaced by default
+     *         reductions; this table is not modified
+     */
+    public ParserTable compress(boolean defaultReductions) {
+        return new ParserTable(startState, symbolCount, eofSymbol, null,
+                CombTable.create(values, getStateCount(), symbolCount, lefts, defaultReductions), lengths, lefts, modes);
+    }
+
     /** has to be a unique value, i.e. something not produced by createValue. */
     private static final int COUNT_MARK = Parser.SKIP + 4;
 
+    /** @return null if the table is compressed */
     public String[] packValues() {
         StringBuilder difs;
         StringBuilder vals;
@@ -206,6 +246,9 @@ public class ParserTable implements Serializable {
         int count;
         int v;
 
+        if (values == null) {
+            return null;
+        }
         difs = new StringBuilder();
         vals = new StringBuilder();
         prev = 0;
@@ -228,7 +271,7 @@ public class ParserTable implements Serializable {
         return packValue(difs, vals);
     }
 
-    private static final int MAX_UTF8_LENGTH = 0xffff / 3;  // 3 max size of utf8 encoded char
+    static final int MAX_UTF8_LENGTH = 0xffff / 3;  // 3 max size of utf8 encoded char
 
     public String[] packValue(StringBuilder difs, StringBuilder vals) {
         List<String> lst;
@@ -245,7 +288,7 @@ public class ParserTable implements Serializable {
         return array;
     }
 
-    private static void split(StringBuilder str, int chunkLength, List<String> result) {
+    static void split(StringBuilder str, int chunkLength, List<String> result) {
         int i;
         int max;
 
@@ -315,7 +358,7 @@ public class ParserTable implements Serializable {
     }
 
     public int getStateCount() {
-        return values.length / symbolCount;
+        return values != null ? values.length / symbolCount : comb.getStateCount();
     }
 
     public int getStartState() {
@@ -344,12 +387,32 @@ public class ParserTable implements Serializable {
         return value >>> ACTION_BITS;
     }
 
+    /** @param symbol  terminal */
     public int lookup(int state, int symbol) {
-        return values[state * symbolCount + symbol];
+        if (values != null) {
+            return values[state * symbolCount + symbol];
+        } else {
+            return comb.lookup(state, symbol);
+        }
     }
 
     public int lookupShift(int state, int production) {
-        return values[state * symbolCount + lefts[production]] >>> ACTION_BITS;
+        if (values != null) {
+            return values[state * symbolCount + lefts[production]] >>> ACTION_BITS;
+        } else {
+            return comb.lookupGoto(state, lefts[production]);
+        }
+    }
+
+    /** Compressed tables report the default goto for states without goto on the nonterminal. */
+    private int get(int state, int symbol) {
+        if (values != null) {
+            return values[state * symbolCount + symbol];
+        } else if (comb.isNonterminal(symbol)) {
+            return createValue(Parser.SHIFT, comb.lookupGoto(state, symbol));
+        } else {
+            return comb.lookup(state, symbol);
+        }
     }
 
     public char getMode(int state) {
@@ -358,15 +421,21 @@ public class ParserTable implements Serializable {
 
     public void print(PrintWriter dest) {
         int i;
+        int max;
 
-        for (i = 0; i < values.length; i++) {
+        max = getStateCount() * symbolCount;
+        for (i = 0; i < max; i++) {
             if (i % 30 == 0) {
                 dest.println();
             }
-            dest.print(" " + (int) values[i]);
+            dest.print(" " + get(i / symbolCount, i % symbolCount));
         }
     }
 
+    /**
+     * For compressed tables, terminals reduced by the state's default reduction are missing. But these states
+     * don't report syntax errors, and modes are computed from the uncompressed table.
+     */
     public IntBitSet getShifts(int state) {
         int i;
         int value;
@@ -377,7 +446,10 @@ public class ParserTable implements Serializable {
         symbolCount = getSymbolCount();
         result = new IntBitSet();
         for (i = 0; i < symbolCount; i++) {
-            value = lookup(state, i);
+            if (comb != null && !comb.contains(state, i)) {
+                continue;
+            }
+            value = get(state, i);
             action = getAction(value);
             if (action == Parser.SHIFT || action == Parser.REDUCE) {
                 result.add(i);
@@ -433,7 +505,7 @@ public class ParserTable implements Serializable {
             result.append(state);
             result.append('\t');
             for (symbol = 0; symbol < symbolCount; symbol++) {
-                value = lookup(state, symbol);
+                value = get(state, symbol);
                 result.append(actionToString(value, grammar)).append('\t');
             }
             result.append('\n');
@@ -67,6 +67,20 @@ public class Item implements Comparable<Item> {
         return getRemaining() == 0;
     }
 
+    /** @return true if the dot is not at the beginning, i.e. the item is not added by closure */
+    public boolean isKernel(Grammar grammar) {
+        return getRemaining() < grammar.getLength(getProduction());
+    }
+
+    /** @return item with both lookaheads; lookaheads are shared, so they are never modified */
+    public Item merge(Item item) {
+        PrefixSet merged;
+
+        merged = new PrefixSet(lookahead);
+        merged.addAll(item.lookahead);
+        return new Item(core, merged);
+    }
+
     public Item createShifted() {
         if (isReduce()) {
             return null;
@@ -111,7 +125,7 @@ public class Item implements Comparable<Item> {
         if (len == dot) {
             return new PrefixSet(lookahead);
         }
-        concat = new Concat(k);
+        concat = new Concat(lookahead.getEncoding(), k);
         for (int ofs = dot; ofs < len; ofs++) {
             symbol = grammar.getRight(production, ofs);
             if (concat.with(firsts.get(symbol))) {
@@ -20,91 +20,217 @@ import net.oneandone.mork.grammar.Grammar;
 import net.oneandone.mork.grammar.PrefixSet;
 import net.oneandone.mork.misc.GenericException;
 import net.oneandone.mork.parser.ParserTable;
+import net.oneandone.sushi.util.IntArrayList;
 
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /* LR(k) automaton, follow the description in http://amor.cms.hu-berlin.de/~kunert/papers/lr-analyse/ */
 
 public class PDA implements PDABuilder {
     public static PDA create(Grammar grammar, final Map<Integer, PrefixSet> firsts, final int k, int threadCount) {
-        final PDA pda;
+        return create(grammar, firsts, k, threadCount, false);
+    }
+
+    /**
+     * Canonical states are computed in breadth-first waves: the successors of all states in a wave are computed
+     * by a work-stealing pool, ids are assigned afterwards in wave order. Thus ids do not depend on the
+     * number of threads.
+     *
+     * @param merge true to merge states with the same core where Pager's weak compatibility allows it. Merging
+     *              is sequential, threadCount is ignored.
+     */
+    public static PDA create(Grammar grammar, Map<Integer, PrefixSet> firsts, int k, int threadCount,
+                             boolean merge) {
+        PDA pda;
         State state;
-        final Queue todo;
         int end;
-        Thread[] threads;
-        final List<Throwable> exceptions;
 
-        threads = new Thread[threadCount];
-        todo = new Queue(threads.length);
-        state = State.forStartSymbol(grammar, grammar.getSymbolCount());
+        // all first sets share the encoding
+        state = State.forStartSymbol(grammar, firsts.get(grammar.getStart()).getEncoding(), grammar.getSymbolCount());
         state.closure(grammar, firsts, k);
-        pda = new PDA(grammar, state);
-        todo.put(state);
-        exceptions = new ArrayList<Throwable>();
-        for (int i = 0; i < threads.length; i++) {
-            threads[i] = new Thread("pda-builder-" + i) {
-                @Override
-                public void run() {
-                    net.oneandone.mork.pda.State state;
-
-                    try {
-                        while (true) {
-                            state = todo.take();
-                            state.gotos(pda, firsts, todo, k);
-                        }
-                    } catch (InterruptedException e) {
-                        return; // terminate
-                    } catch (Throwable e) {
-                        synchronized (exceptions) {
-                            exceptions.add(e);
+        pda = new PDA(grammar, state, merge);
+        if (merge) {
+            pda.sequential(firsts, k);
+            pda.removeUnreachable();
+        } else {
+            pda.parallel(firsts, k, threadCount);
+        }
+        // TODO: hack hack hack
+        end = pda.add(new State());
+        pda.start.shifts.add(new Shift(grammar.getStart(), end));
+        return pda;
+    }
+
+    private void sequential(Map<Integer, PrefixSet> firsts, int k) {
+        Deque<State> todo;
+
+        todo = new ArrayDeque<State>();
+        todo.push(start);
+        while (!todo.isEmpty()) {
+            todo.pop().gotos(this, firsts, todo, k);
+        }
+    }
+
+    private void parallel(Map<Integer, PrefixSet> firsts, int k, int threadCount) {
+        ForkJoinPool pool;
+        List<State> wave;
+        List<State> next;
+        Successors task;
+        State state;
+        State target;
+        Integer id;
+        int i;
+        int j;
+
+        pool = new ForkJoinPool(threadCount);
+        try {
+            wave = new ArrayList<State>();
+            wave.add(start);
+            while (!wave.isEmpty()) {
+                task = new Successors(this, firsts, k, wave, 0, wave.size());
+                pool.invoke(task);
+                next = new ArrayList<State>();
+                for (i = 0; i < wave.size(); i++) {
+                    state = wave.get(i);
+                    for (j = 0; j < task.symbols.get(i).size(); j++) {
+                        target = task.targets.get(i).get(j);
+                        id = ids.get(target);
+                        if (id == null) {
+                            id = add(target);
+                            next.add(target);
                         }
+                        state.shifts.add(new Shift(task.symbols.get(i).get(j), id));
                     }
                 }
-            };
-            threads[i].start();
-        }
-        for (Thread thread : threads) {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                throw new IllegalStateException(e);
+                wave = next;
             }
+        } finally {
+            pool.shutdown();
         }
+    }
+
+    /** Computes the successors of a range of states; equal successors are replaced by one canonical instance. */
+    private static class Successors extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private static final int THRESHOLD = 4;
 
-        if (exceptions.size() > 0) {
-            throw new IllegalStateException("thread exceptions: " + exceptions.size(), exceptions.get(0));
+        private final PDA pda;
+        private final Map<Integer, PrefixSet> firsts;
+        private final int k;
+        private final List<State> wave;
+        private final int from;
+        private final int to;
+        /** indexed by wave position, shared by all sub tasks */
+        public final List<IntArrayList> symbols;
+        public final List<List<State>> targets;
+
+        public Successors(PDA pda, Map<Integer, PrefixSet> firsts, int k, List<State> wave, int from, int to) {
+            this(pda, firsts, k, wave, from, to,
+                    new ArrayList<IntArrayList>(Collections.<IntArrayList>nCopies(wave.size(), null)),
+                    new ArrayList<List<State>>(Collections.<List<State>>nCopies(wave.size(), null)));
+        }
+
+        private Successors(PDA pda, Map<Integer, PrefixSet> firsts, int k, List<State> wave, int from, int to,
+                           List<IntArrayList> symbols, List<List<State>> targets) {
+            this.pda = pda;
+            this.firsts = firsts;
+            this.k = k;
+            this.wave = wave;
+            this.from = from;
+            this.to = to;
+            this.symbols = symbols;
+            this.targets = targets;
+        }
+
+        @Override
+        protected void compute() {
+            int middle;
+            List<State> lst;
+            State existing;
+            int i;
+            int j;
+
+            if (to - from > THRESHOLD) {
+                middle = (from + to) / 2;
+                invokeAll(new Successors(pda, firsts, k, wave, from, middle, symbols, targets),
+                        new Successors(pda, firsts, k, wave, middle, to, symbols, targets));
+                return;
+            }
+            for (i = from; i < to; i++) {
+                symbols.set(i, new IntArrayList());
+                lst = new ArrayList<State>();
+                wave.get(i).successors(pda.grammar, firsts, k, symbols.get(i), lst);
+                for (j = 0; j < lst.size(); j++) {
+                    existing = pda.registry.putIfAbsent(lst.get(j), lst.get(j));
+                    if (existing != null) {
+                        lst.set(j, existing);
+                    }
+                }
+                targets.set(i, lst);
+            }
         }
-        // TODO: hack hack hack
-        end = pda.add(new State());
-        pda.start.shifts.add(new Shift(grammar.getStart(), end));
-        return pda;
     }
 
     private final Grammar grammar;
-    private final HashMap<State, Integer> states;
+    /** indexed by id */
+    private final List<State> states;
+    /** canonical instance of each state, null when merging */
+    private final ConcurrentMap<State, State> registry;
+    /** ids of canonical instances, null when merging */
+    private final Map<State, Integer> ids;
+    /** state ids by hash code of their core, null when not merging */
+    private final Map<Integer, IntArrayList> cores;
     private final State start;
 
     public PDA(Grammar grammar, State start) {
+        this(grammar, start, false);
+    }
+
+    public PDA(Grammar grammar, State start, boolean merge) {
         this.grammar = grammar;
-        this.states = new LinkedHashMap<State, Integer>();
+        this.states = new ArrayList<State>();
+        this.registry = merge ? null : new ConcurrentHashMap<State, State>();
+        this.ids = merge ? null : new IdentityHashMap<State, Integer>();
+        this.cores = merge ? new HashMap<Integer, IntArrayList>() : null;
         this.start = start;
         add(start);
     }
 
     private Iterable<State> states() {
-        return states.keySet();
+        return states;
     }
 
     public int add(State state) {
         int id;
+        IntArrayList lst;
 
         id = states.size();
-        states.put(state, id);
+        states.add(state);
+        if (ids != null) {
+            registry.putIfAbsent(state, state);
+            ids.put(state, id);
+        } else {
+            lst = cores.get(state.hashCode());
+            if (lst == null) {
+                lst = new IntArrayList();
+                cores.put(state.hashCode(), lst);
+            }
+            lst.add(id);
+        }
         return id;
     }
 
@@ -113,13 +239,91 @@ public class PDA implements PDABuilder {
         return grammar;
     }
 
-    /** @return id of existing state, -id of newly added state */
     @Override
-    public synchronized int addIfNew(State state) {
-        Integer existing;
+    public int addIfNew(State state, Deque<State> created) {
+        State existing;
+        int id;
+
+        if (ids == null) {
+            return merge(state, created);
+        }
+        existing = registry.get(state);
+        if (existing != null) {
+            return ids.get(existing);
+        }
+        id = add(state);
+        created.push(state);
+        return id;
+    }
+
+    private int merge(State state, Deque<State> created) {
+        IntArrayList candidates;
+        State existing;
+        int i;
+        int id;
+
+        candidates = cores.get(state.hashCode());
+        if (candidates != null) {
+            for (i = 0; i < candidates.size(); i++) {
+                existing = states.get(candidates.get(i));
+                if (existing.sameCore(state) && existing.containsLookaheads(state, grammar)) {
+                    return candidates.get(i);
+                }
+            }
+            for (i = 0; i < candidates.size(); i++) {
+                existing = states.get(candidates.get(i));
+                if (existing.sameCore(state) && existing.isCompatible(state, grammar)) {
+                    existing.merge(state);
+                    // propagate the new lookahead to the successors
+                    created.push(existing);
+                    return candidates.get(i);
+                }
+            }
+        }
+        id = add(state);
+        created.push(state);
+        return id;
+    }
 
-        existing = states.get(state);
-        return existing == null ? -add(state) : existing.intValue();
+    /** Merging leaves states behind that were successors before their predecessor got more lookahead. */
+    private void removeUnreachable() {
+        int[] map;
+        IntArrayList todo;
+        List<State> reachable;
+        int i;
+        Shift shift;
+
+        map = new int[states.size()];
+        Arrays.fill(map, -1);
+        todo = new IntArrayList();
+        todo.add(0);
+        map[0] = 0;
+        for (i = 0; i < todo.size(); i++) {
+            for (Shift sh : states.get(todo.get(i)).shifts) {
+                if (map[sh.end] == -1) {
+                    map[sh.end] = 0;
+                    todo.add(sh.end);
+                }
+            }
+        }
+        reachable = new ArrayList<State>();
+        for (i = 0; i < map.length; i++) {
+            if (map[i] != -1) {
+                map[i] = reachable.size();
+                reachable.add(states.get(i));
+            }
+        }
+        for (State s : reachable) {
+            for (i = 0; i < s.shifts.size(); i++) {
+                shift = s.shifts.get(i);
+                s.shifts.set(i, new Shift(shift.symbol, map[shift.end]));
+            }
+        }
+        states.clear();
+        cores.clear();
+        for (State s : reachable) {
+            add(s);
+        }
     }
 
     @Override
@@ -139,11 +343,12 @@ public class PDA implements PDABuilder {
         ParserTable result;
         int eof;
         int end;
+        int i;
 
         eof = getEofSymbol();
         result = new ParserTable(0, size(), lastSymbol + 1 /* +1 for EOF */, eof, grammar, null);
-        for (Map.Entry<State, Integer> entry : states.entrySet()) {
-            entry.getKey().addActions(entry.getValue(), result, handler);
+        for (i = 0; i < states.size(); i++) {
+            states.get(i).addActions(i, result, handler);
         }
         end = start.lookupShift(grammar.getStart()).end;
         result.addAccept(end, eof);
@@ -151,8 +356,10 @@ public class PDA implements PDABuilder {
     }
 
     public void print(PrintWriter dest) {
-        for (Map.Entry<State, Integer> entry : states.entrySet()) {
-            dest.println(entry.getKey().toString(entry.getValue(), grammar));
+        int i;
+
+        for (i = 0; i < states.size(); i++) {
+            dest.println(states.get(i).toString(i, grammar));
         }
     }
 
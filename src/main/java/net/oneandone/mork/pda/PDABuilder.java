@@ -17,8 +17,11 @@ package net.oneandone.mork.pda;
 
 import net.oneandone.mork.grammar.Grammar;
 
+import java.util.Deque;
+
 public interface PDABuilder {
     Grammar getGrammar();
-    int addIfNew(State state);
+    /** @return id of the state; new states and states that have changed are put into created */
+    int addIfNew(State state, Deque<State> created);
     int size();
 }
@@ -18,19 +18,22 @@ package net.oneandone.mork.pda;
 import net.oneandone.mork.compiler.ConflictHandler;
 import net.oneandone.mork.grammar.Grammar;
 import net.oneandone.mork.grammar.Prefix;
+import net.oneandone.mork.grammar.PrefixEncoding;
 import net.oneandone.mork.grammar.PrefixSet;
 import net.oneandone.mork.parser.ParserTable;
+import net.oneandone.sushi.util.IntArrayList;
 import net.oneandone.sushi.util.IntBitSet;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
 /** LR(k) state */
 
 public class State {
-    public static State forStartSymbol(Grammar grammar, int eof) {
+    public static State forStartSymbol(Grammar grammar, PrefixEncoding encoding, int eof) {
         int symbol;
         State state;
         int max;
@@ -39,7 +42,7 @@ public class State {
         symbol = grammar.getStart();
         max = grammar.getAlternativeCount(symbol);
         for (int alt = 0; alt < max; alt++) {
-            state.items.add(Item.create(grammar, grammar.getAlternative(symbol, alt), PrefixSet.one(eof)));
+            state.items.add(Item.create(grammar, grammar.getAlternative(symbol, alt), PrefixSet.one(encoding, eof)));
         }
         return state;
     }
@@ -79,15 +82,34 @@ public class State {
         Collections.sort(items);
     }
 
-    public void gotos(PDABuilder pda, Map<Integer, PrefixSet> firsts, Queue created, int k) {
-        Grammar grammar;
+    public void gotos(PDABuilder pda, Map<Integer, PrefixSet> firsts, Deque<State> created, int k) {
+        IntArrayList symbols;
+        List<State> targets;
+        int i;
+
+        // states are processed again when merging has added lookahead
+        shifts.clear();
+        symbols = new IntArrayList();
+        targets = new ArrayList<State>();
+        successors(pda.getGrammar(), firsts, k, symbols, targets);
+        for (i = 0; i < symbols.size(); i++) {
+            this.shifts.add(new Shift(symbols.get(i), pda.addIfNew(targets.get(i), created)));
+        }
+    }
+
+    /**
+     * Computes the closed successor states without registering them anywhere; thread-safe as long as nobody
+     * modifies this state.
+     *
+     * @param symbols receives the shift symbols in ascending order
+     * @param targets receives the successor state for each symbol
+     */
+    public void successors(Grammar grammar, Map<Integer, PrefixSet> firsts, int k, IntArrayList symbols, List<State> targets) {
         IntBitSet shiftSymbols;
         int symbol;
         State state;
-        int target;
         Item shifted;
 
-        grammar = pda.getGrammar();
         shiftSymbols = getShiftSymbols(grammar);
         for (symbol = shiftSymbols.first(); symbol != -1; symbol = shiftSymbols.next(symbol)) {
             state = new State();
@@ -100,12 +122,8 @@ public class State {
                 }
             }
             state.closure(grammar, firsts, k);
-            target = pda.addIfNew(state);
-            if (target < 0) {
-                created.put(state);
-                target = -target;
-            }
-            this.shifts.add(new Shift(symbol, target));
+            symbols.add(symbol);
+            targets.add(state);
         }
     }
 
@@ -123,6 +141,81 @@ public class State {
         return result;
     }
 
+    //-- merging
+
+    /** @return true if both states have the same items when ignoring lookaheads */
+    public boolean sameCore(State state) {
+        int i;
+
+        if (items.size() != state.items.size()) {
+            return false;
+        }
+        for (i = 0; i < items.size(); i++) {
+            if (items.get(i).core != state.items.get(i).core) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @param state with the same core. @return true if merging the state would not change this state */
+    public boolean containsLookaheads(State state, Grammar grammar) {
+        int i;
+        Item item;
+
+        for (i = 0; i < items.size(); i++) {
+            item = items.get(i);
+            if (item.isKernel(grammar) && !item.lookahead.containsAll(state.items.get(i).lookahead)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pager's weak compatibility, checked for kernel items: merging states with the same core never adds a
+     * shift-reduce conflict; a reduce-reduce conflict is possible only if two lookaheads intersect across the states
+     * but neither within this state nor within the other.
+     *
+     * @param state with the same core
+     */
+    public boolean isCompatible(State state, Grammar grammar) {
+        int i;
+        int j;
+        PrefixSet a1;
+        PrefixSet a2;
+        PrefixSet b1;
+        PrefixSet b2;
+
+        for (i = 0; i < items.size(); i++) {
+            if (!items.get(i).isKernel(grammar)) {
+                continue;
+            }
+            a1 = items.get(i).lookahead;
+            b1 = state.items.get(i).lookahead;
+            for (j = i + 1; j < items.size(); j++) {
+                if (!items.get(j).isKernel(grammar)) {
+                    continue;
+                }
+                a2 = items.get(j).lookahead;
+                b2 = state.items.get(j).lookahead;
+                if ((a1.intersects(b2) || b1.intersects(a2)) && !a1.intersects(a2) && !b1.intersects(b2)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** @param state with the same core */
+    public void merge(State state) {
+        int i;
+
+        for (i = 0; i < items.size(); i++) {
+            items.set(i, items.get(i).merge(state.items.get(i)));
+        }
+    }
+
     //--
 
     @Override
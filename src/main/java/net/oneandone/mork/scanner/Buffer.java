@@ -32,7 +32,7 @@ import java.io.Reader;
  * Buffer storage is devided into pages.
  */
 
-public class Buffer {
+public class Buffer implements Input {
     /**
      * True if src.read() has returned -1. Does not necessarily meant that this buffer
      * is EOF as well.
@@ -47,6 +47,9 @@ public class Buffer {
     /** start position */
     private Position position;
 
+    /** line starts of the characters read since the last split */
+    private Lines lines;
+
     private final Pages pages;
 
     /** reduncant, but more efficient */
@@ -76,11 +79,17 @@ public class Buffer {
         this.pages = new Pages(pageSize);
     }
 
+    public Buffer(Position position, Reader src) {
+        this();
+        open(position, src);
+    }
+
     public void open(Position position, Reader src) {
         this.position = position;
+        this.lines = new Lines(position);
         this.eof = false;
         this.start = 0;
-        this.pages.open(src);
+        this.pages.open(src, lines, position.getOffset());
         this.endPageIdx = 0;
         this.endPage = pages.get(0);
         this.end = 0;
@@ -108,6 +117,7 @@ public class Buffer {
         }
     }
 
+    @Override
     public int getEndOfs() {
         return endPageIdx * pageSize + end;
     }
@@ -116,6 +126,7 @@ public class Buffer {
      * Sets the current end ofs by to the specified value
      * @param ofs &lt; getEndOfs()
      */
+    @Override
     public void resetEndOfs(int ofs) {
         if (endPageIdx == 0) {
             // because a precondition is that ofs is left of the
@@ -146,6 +157,7 @@ public class Buffer {
      * Advances the end and returns the character at this positio.
      * @return character or Scanner.EOF
      */
+    @Override
     public int read() throws IOException {
         if (end == endFilled) {
             switch (pages.read(endPageIdx, endFilled)) {
@@ -173,28 +185,28 @@ public class Buffer {
     /**
      * Move start forward to the current position.
      */
+    @Override
     public void eat() {
-        int i;
-
-        if (endPageIdx == 0) {
-            position.update(endPage, start, end);
-            start = end;
-        } else {
-            position.update(pages.get(0), start, pageSize);
-            for (i = 1; i < endPageIdx; i++) {
-                position.update(pages.get(i), 0, pageSize);
-            }
+        // lines has seen these characters when they were read
+        position.advance(lines, endPageIdx * pageSize + end - start);
+        if (lines.size() >= Lines.MAX_LINES) {
+            // positions and nodes before the split keep the old index
+            lines = lines.split(position.getOffset());
+            pages.setLines(lines);
+            position.advance(lines, 0);
+        }
+        if (endPageIdx != 0) {
             pages.shrink(endPageIdx);
             endPageIdx = 0;
             endPage = pages.get(0);
-            start = end;
-            position.update(endPage, 0, start);
         }
+        start = end;
     }
 
     /**
      * Returns the string between start and the current position.
      */
+    @Override
     public String createString() {
         int i;
         int count;
@@ -217,10 +229,39 @@ public class Buffer {
         }
     }
 
+    @Override
+    public CharSequence createText() {
+        return createString();
+    }
+
+    @Override
+    public String createInterned(Interner interner) {
+        String str;
+
+        if (endPageIdx == 0) {
+            return interner.intern(endPage, start, end - start);
+        } else {
+            // rare: tokens spanning pages
+            str = createString();
+            return interner.intern(str, 0, str.length());
+        }
+    }
+
+    @Override
     public void getPosition(Position result) {
         result.set(position);
     }
 
+    @Override
+    public int getOffset() {
+        return position.getOffset();
+    }
+
+    @Override
+    public Lines getLines() {
+        return lines;
+    }
+
     //--
 
     @Override
@@ -0,0 +1,184 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * Input that scans directly over a CharSequence, e.g. a String, a CharBuffer or a mapped file. Unlike Buffer,
+ * there are no pages to fill and shrink, and createString copies the characters only once. Offsets are indexes
+ * into the CharSequence.
+ */
+public class CharSequenceInput implements Input {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Maps the specified file into memory. UTF-8 files are scanned byte-wise by a Utf8Input, single-byte
+     * encodings are scanned without decoding; other encodings are decoded into a CharBuffer.
+     *
+     * @param position  start position of the file
+     */
+    public static Input map(Position position, Path path, Charset charset) throws IOException {
+        MappedByteBuffer bytes;
+
+        bytes = Utf8Input.map(path);
+        if (UTF_8.equals(charset)) {
+            return new Utf8Input(position, bytes);
+        }
+        if (isSingleByte(charset)) {
+            return new CharSequenceInput(position, new Latin1Sequence(bytes, 0, bytes.limit()));
+        }
+        return new CharSequenceInput(position, charset.newDecoder().decode(bytes));
+    }
+
+    private static boolean isSingleByte(Charset charset) {
+        return "ISO-8859-1".equals(charset.name()) || "US-ASCII".equals(charset.name());
+    }
+
+    //--
+
+    private final CharSequence src;
+    private final int length;
+
+    /** start position */
+    private final Position position;
+
+    /** line starts, indexed when a position asks for its line */
+    private final Lines lines;
+
+    private int start;
+    private int end;
+
+    public CharSequenceInput(Position position, CharSequence src) {
+        this.src = src;
+        this.length = src.length();
+        this.position = position;
+        this.lines = new Lines(position, src);
+        this.start = 0;
+        this.end = 0;
+    }
+
+    @Override
+    public int read() {
+        if (end == length) {
+            return Scanner.EOF;
+        }
+        return src.charAt(end++);
+    }
+
+    @Override
+    public void eat() {
+        position.advance(lines, end - start);
+        start = end;
+    }
+
+    public int getStartOfs() {
+        return start;
+    }
+
+    @Override
+    public int getEndOfs() {
+        return end;
+    }
+
+    @Override
+    public void resetEndOfs(int ofs) {
+        end = ofs;
+    }
+
+    @Override
+    public String createString() {
+        return src.subSequence(start, end).toString();
+    }
+
+    @Override
+    public CharSequence createText() {
+        return new TokenText(src, start, end);
+    }
+
+    @Override
+    public String createInterned(Interner interner) {
+        return interner.intern(src, start, end);
+    }
+
+    @Override
+    public void getPosition(Position result) {
+        result.set(position);
+    }
+
+    @Override
+    public int getOffset() {
+        return position.getOffset();
+    }
+
+    @Override
+    public Lines getLines() {
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "input {start=" + start + ", end=" + end + ", length=" + length + "}";
+    }
+
+    //--
+
+    /** Characters 0..255 stored as bytes. */
+    public static class Latin1Sequence implements CharSequence {
+        private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+        private final ByteBuffer bytes;
+        private final int ofs;
+        private final int length;
+
+        public Latin1Sequence(ByteBuffer bytes, int ofs, int length) {
+            this.bytes = bytes;
+            this.ofs = ofs;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(ofs + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new Latin1Sequence(bytes, ofs + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            ByteBuffer view;
+            byte[] data;
+
+            view = bytes.duplicate();
+            view.position(ofs);
+            data = new byte[length];
+            view.get(data);
+            return new String(data, LATIN1);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.scanner;
+
+import java.io.IOException;
+
+/**
+ * Characters to be scanned. Like Buffer, an input has a start and an end, that select a possible token.
+ * Offsets are opaque values that increase with every read, e.g. character counts or byte indexes; they are valid
+ * between two calls of eat.
+ */
+public interface Input {
+    /**
+     * Advances the end and returns the character at this position.
+     * @return character or Scanner.EOF
+     */
+    int read() throws IOException;
+
+    /** Move start forward to the current end. */
+    void eat();
+
+    int getEndOfs();
+
+    /**
+     * Sets the current end ofs by to the specified value
+     * @param ofs &lt; getEndOfs()
+     */
+    void resetEndOfs(int ofs);
+
+    /** Returns the string between start and end. */
+    String createString();
+
+    /**
+     * Returns the text between start and end. Inputs that keep all characters until the end of the run may
+     * return a TokenText that creates the string on demand; other inputs return createString().
+     */
+    CharSequence createText();
+
+    /** Like createString, but returns the string from the interner if it already has this text. */
+    String createInterned(Interner interner);
+
+    /** Assigns the position of start. */
+    void getPosition(Position result);
+
+    /** @return position offset of start, i.e. the offset getPosition would assign */
+    int getOffset();
+
+    /** @return line index for the position offsets of this input */
+    Lines getLines();
+}
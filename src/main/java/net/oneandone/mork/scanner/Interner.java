@@ -0,0 +1,160 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.scanner;
+
+/**
+ * Bounded table of token strings, so that lexemes that repeat - typically identifiers and keywords - are
+ * returned as the same String instance. Open addressing keyed on the characters: looking up a lexeme that is
+ * already in the table creates no String. The table never grows; if all slots of a probe sequence are taken
+ * by other strings, the first one is replaced. Not thread-safe.
+ */
+public class Interner {
+    public static final int DEFAULT_SIZE = 4096;
+
+    /** longer texts are not interned, they are rarely repeated */
+    public static final int MAX_LENGTH = 64;
+
+    private static final int PROBES = 4;
+
+    private final String[] strings;
+    private final int[] hashes;
+    private final int mask;
+
+    public Interner() {
+        this(DEFAULT_SIZE);
+    }
+
+    /** @param size power of 2 */
+    public Interner(int size) {
+        if (size <= 0 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("size is not a power of 2: " + size);
+        }
+        this.strings = new String[size];
+        this.hashes = new int[size];
+        this.mask = size - 1;
+    }
+
+    public String intern(char[] chars, int ofs, int length) {
+        int hash;
+        int i;
+        int slot;
+        String str;
+
+        if (length > MAX_LENGTH) {
+            return new String(chars, ofs, length);
+        }
+        hash = 0;
+        for (i = 0; i < length; i++) {
+            hash = 31 * hash + chars[ofs + i];
+        }
+        for (i = 0; i < PROBES; i++) {
+            slot = (spread(hash) + i) & mask;
+            str = strings[slot];
+            if (str == null) {
+                break;
+            }
+            if (hashes[slot] == hash && equals(str, chars, ofs, length)) {
+                return str;
+            }
+        }
+        return put(hash, i, new String(chars, ofs, length));
+    }
+
+    public String intern(CharSequence seq, int start, int end) {
+        int length;
+        int hash;
+        int i;
+        int slot;
+        String str;
+
+        length = end - start;
+        if (length > MAX_LENGTH) {
+            return seq.subSequence(start, end).toString();
+        }
+        hash = 0;
+        for (i = start; i < end; i++) {
+            hash = 31 * hash + seq.charAt(i);
+        }
+        for (i = 0; i < PROBES; i++) {
+            slot = (spread(hash) + i) & mask;
+            str = strings[slot];
+            if (str == null) {
+                break;
+            }
+            if (hashes[slot] == hash && equals(str, seq, start, length)) {
+                return str;
+            }
+        }
+        return put(hash, i, seq.subSequence(start, end).toString());
+    }
+
+    /** number of strings in the table */
+    public int size() {
+        int count;
+
+        count = 0;
+        for (String str : strings) {
+            if (str != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //--
+
+    /** @param probe index of the first free slot, or PROBES if all slots are taken */
+    private String put(int hash, int probe, String str) {
+        int slot;
+
+        slot = (spread(hash) + (probe == PROBES ? 0 : probe)) & mask;
+        strings[slot] = str;
+        hashes[slot] = hash;
+        return str;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String str, char[] chars, int ofs, int length) {
+        int i;
+
+        if (str.length() != length) {
+            return false;
+        }
+        for (i = 0; i < length; i++) {
+            if (str.charAt(i) != chars[ofs + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(String str, CharSequence seq, int start, int length) {
+        int i;
+
+        if (str.length() != length) {
+            return false;
+        }
+        for (i = 0; i < length; i++) {
+            if (str.charAt(i) != seq.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.scanner;
+
+/**
+ * Offsets of the line starts of an input, used to compute lines and columns of positions on demand. Offsets
+ * are position offsets, i.e. they count characters from the start of the input. The index is either built
+ * by adding the characters as they are read, or by scanning a CharSequence that stays available.
+ *
+ * An index keeps one int per line as long as a position or a node refers to it. Buffer doesn't keep its
+ * characters, so it splits its index every MAX_LINES lines; an old part is garbage collected together with
+ * the last node that refers to it.
+ */
+public class Lines {
+    /** number of line starts after which inputs without a source split their index */
+    public static final int MAX_LINES = 4096;
+
+    private final String context;
+    private final int firstLine;
+    private final int firstColumn;
+    private final int firstOfs;
+
+    /** offsets of the characters after newlines; sorted */
+    private int[] starts;
+    private int count;
+
+    /** null if characters are added explicitly; index 0 is firstOfs */
+    private final CharSequence src;
+    /** characters before this offset have been indexed */
+    private int indexed;
+
+    /** Characters have to be added explicitly. */
+    public Lines(Position first) {
+        this(first, null);
+    }
+
+    /** Indexes the specified sequence on demand. */
+    public Lines(Position first, CharSequence src) {
+        this(first.getContext(), first.getLine(), first.getColumn(), first.getOffset(), src);
+    }
+
+    private Lines(String context, int firstLine, int firstColumn, int firstOfs, CharSequence src) {
+        this.context = context;
+        this.firstLine = firstLine;
+        this.firstColumn = firstColumn;
+        this.firstOfs = firstOfs;
+        this.starts = new int[64];
+        this.count = 0;
+        this.src = src;
+        this.indexed = firstOfs;
+    }
+
+    /** @param ofs position offset of data[from] */
+    public void add(char[] data, int from, int to, int ofs) {
+        int i;
+
+        for (i = from; i < to; i++) {
+            if (data[i] == '\n') {
+                addStart(ofs + i - from + 1);
+            }
+        }
+        indexed = ofs + to - from;
+    }
+
+    /** Assigns the position of the specified offset; line and column are computed when asked for. */
+    public void getPosition(int ofs, Position result) {
+        result.set(context, this, ofs);
+    }
+
+    public int getLine(int ofs) {
+        return line(lineIndex(ofs));
+    }
+
+    public int getColumn(int ofs) {
+        return column(lineIndex(ofs), ofs);
+    }
+
+    //-- called by Position and inputs
+
+    /** @return number of line starts in this index */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns an index for the offsets from ofs on that continues this one. This index stops growing, but
+     * still answers for offsets before ofs.
+     */
+    Lines split(int ofs) {
+        Lines result;
+        int index;
+        int i;
+
+        if (src != null) {
+            throw new IllegalStateException();
+        }
+        index = lineIndex(ofs);
+        result = new Lines(context, line(index), column(index, ofs), ofs, null);
+        for (i = index; i < count; i++) {
+            result.addStart(starts[i]);
+        }
+        result.indexed = indexed;
+        return result;
+    }
+
+    /** @param ofs offset of a character after a newline */
+    void addStart(int ofs) {
+        int[] tmp;
+
+        if (count == starts.length) {
+            tmp = new int[count * 2];
+            System.arraycopy(starts, 0, tmp, 0, count);
+            starts = tmp;
+        }
+        starts[count++] = ofs;
+    }
+
+    /** @return number of line starts up to and including ofs */
+    int lineIndex(int ofs) {
+        int low;
+        int high;
+        int mid;
+
+        if (src != null && indexed < ofs) {
+            scan(ofs);
+        }
+        low = 0;
+        high = count;
+        while (low < high) {
+            mid = (low + high) >>> 1;
+            if (starts[mid] <= ofs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    int line(int lineIndex) {
+        return firstLine + lineIndex;
+    }
+
+    int column(int lineIndex, int ofs) {
+        if (lineIndex == 0) {
+            return firstColumn + ofs - firstOfs;
+        } else {
+            return ofs - starts[lineIndex - 1] + 1;
+        }
+    }
+
+    //--
+
+    private void scan(int ofs) {
+        int i;
+        int max;
+        int delta;
+
+        delta = -firstOfs;
+        max = ofs + delta;
+        for (i = indexed + delta; i < max; i++) {
+            if (src.charAt(i) == '\n') {
+                addStart(i - delta + 1);
+            }
+        }
+        indexed = ofs;
+    }
+}
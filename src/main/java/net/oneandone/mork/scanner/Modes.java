@@ -34,7 +34,7 @@ public class Modes {
         table.setModes(parserModes);
     }
 
-    public static List generate(FA fa, ParserTable table, IntBitSet whites, PrintWriter listing) throws GenericException {
+    public static List<IntBitSet> generate(FA fa, ParserTable table, IntBitSet whites, PrintWriter listing) throws GenericException {
         int i;
         int max;
         IntBitSet shifts;
@@ -23,6 +23,12 @@ public class Pages {
 
     private Reader src;
 
+    /** null if characters are not indexed */
+    private Lines lines;
+
+    /** position offset of the first character of page 0 */
+    private int firstOfs;
+
     /** Index of the last page */
     private int lastNo;
 
@@ -47,11 +53,23 @@ public class Pages {
     }
 
     public void open(Reader src) {
+        open(src, null, 0);
+    }
+
+    /** @param lines  index to add all characters read to; null for none */
+    public void open(Reader src, Lines lines, int firstOfs) {
         this.src = src;
+        this.lines = lines;
+        this.firstOfs = firstOfs;
         this.lastFilled = 0;
         this.lastNo = 0;
     }
 
+    /** Characters read from now on go to the specified index. */
+    void setLines(Lines lines) {
+        this.lines = lines;
+    }
+
     public char[] get(int no) {
         return pages[no];
     }
@@ -109,6 +127,9 @@ public class Pages {
             }
             return false;
         }
+        if (lines != null) {
+            lines.add(pages[lastNo], lastFilled, lastFilled + count, firstOfs + lastNo * pageSize + lastFilled);
+        }
         lastFilled += count;
         return true;
     }
@@ -143,6 +164,7 @@ public class Pages {
             throw new IllegalArgumentException(count + " vs " + lastNo);
         }
         lastNo -= count;
+        firstOfs += count * pageSize;
         keepAllocated = pages[0];
         System.arraycopy(pages, count, pages, 0, lastNo + 1);
         pages[lastNo + 1] = keepAllocated;
@@ -26,9 +26,12 @@ public class Position {
     /** Starts at 1 */
     private int col;
 
-    /** Starts at 0. Its redundant and may be removed. */
+    /** Starts at 0. */
     private int ofs;
 
+    /** null if line and col are up to date; otherwise, they are computed from ofs when needed */
+    private Lines lines;
+
     public Position() {
         this(null);
     }
@@ -38,6 +41,7 @@ public class Position {
         this.line = 1;
         this.col = 1;
         this.ofs = 0;
+        this.lines = null;
     }
 
     public void set(String context, int line, int col, int ofs) {
@@ -45,16 +49,38 @@ public class Position {
         this.line = line;
         this.col = col;
         this.ofs = ofs;
+        this.lines = null;
+    }
+
+    /** Line and column are computed from the index when they are asked for. */
+    void set(String context, Lines lines, int ofs) {
+        this.context = context;
+        this.ofs = ofs;
+        this.lines = lines;
     }
 
     public void set(Position arg) {
-        set(arg.context, arg.line, arg.col, arg.ofs);
+        this.context = arg.context;
+        this.line = arg.line;
+        this.col = arg.col;
+        this.ofs = arg.ofs;
+        this.lines = arg.lines;
+    }
+
+    /**
+     * count characters have been passed by the scanner. Unlike update, this does not look at the characters,
+     * line and column are computed from the specified index when they are asked for.
+     */
+    public void advance(Lines lines, int count) {
+        this.ofs += count;
+        this.lines = lines;
     }
 
     /** the indicated range has been passed by the scanner. */
     public void update(char[] data, int start, int end) {
         int i;
 
+        resolve();
         for (i = start; i < end; i++) {
             if (data[i] == '\n') {
                 col = 1;
@@ -75,15 +101,32 @@ public class Position {
     }
 
     public int getLine() {
+        resolve();
         return line;
     }
 
     public int getColumn() {
+        resolve();
         return col;
     }
 
+    /**
+     * Computes line and column now, so this position no longer refers to the line index of its input.
+     */
+    public void resolve() {
+        int index;
+
+        if (lines != null) {
+            index = lines.lineIndex(ofs);
+            line = lines.line(index);
+            col = lines.column(index, ofs);
+            lines = null;
+        }
+    }
+
     @Override
     public String toString() {
+        resolve();
         if (context != null) {
             return context + ":" + line + ":" + col;
         } else {
@@ -18,7 +18,6 @@ package net.oneandone.mork.scanner;
 import net.oneandone.sushi.util.IntBitSet;
 
 import java.io.IOException;
-import java.io.Reader;
 
 /**
  * A token stream, input for parsers.
@@ -33,7 +32,8 @@ public class Scanner {
 
     // the last value with a two-byte representation in utf8
     // (this constant is less important than ERROR_PC because most states
-    // are end states; in my Java grammar 40-non-end vs. 260 end states)
+    // are end states; in my Java grammar 40-non-end vs. 260 end states).
+    // Used in compact tables only, wide tables and decoded entries use -1.
     public static final int NO_TERMINAL = 0x07ff;
 
     /** start state */
@@ -43,16 +43,25 @@ public class Scanner {
     private final int modeCount;
 
     /** see ScannerFactory for a description */
-    private final char[] table;
+    private final int[] table;
 
-    private final Buffer src;
-
-    public Scanner(int start, int modeCount, char[] table, Position pos, Reader reader) {
-        this.start = start;
-        this.modeCount = modeCount;
-        this.table = table;
-        this.src = new Buffer();
-        src.open(pos, reader);
+    /** see ScannerFactory for a description */
+    private final int[] rows;
+    private final int[] ascii;
+    private final int[] lookup;
+    private final int[] pages;
+
+    private final Input src;
+
+    public Scanner(ScannerFactory factory, Input src) {
+        this.start = factory.start;
+        this.modeCount = factory.modeCount;
+        this.table = factory.entries;
+        this.rows = factory.rows;
+        this.ascii = factory.ascii;
+        this.lookup = factory.lookup;
+        this.pages = factory.pages;
+        this.src = src;
     }
 
     /** assigns the position of the last terminal returned by eat. */
@@ -60,11 +69,31 @@ public class Scanner {
         src.getPosition(result);
     }
 
+    /** returns the position offset of the last terminal returned by eat. */
+    public int getOffset() {
+        return src.getOffset();
+    }
+
+    /** returns the line index to convert offsets into lines and columns. */
+    public Lines getLines() {
+        return src.getLines();
+    }
+
     /** returns the text of the last terminal returned by eat. */
     public String getText() {
         return src.createString();
     }
 
+    /** like getText, but the string may be created later; see Input.createText. */
+    public CharSequence getLazyText() {
+        return src.createText();
+    }
+
+    /** like getText, but repeated texts return the same string */
+    public String getInternedText(Interner interner) {
+        return src.createInterned(interner);
+    }
+
     /**
      * Scans the next terminal.
      * @return terminal or ERROR or EOF
@@ -108,6 +137,36 @@ public class Scanner {
         }
     }
 
+    /** @return pc of the range that contains c */
+    private int search(int pc, int c) {
+        int search;
+        int low;
+        int high;
+        int mid;
+
+        search = lookup[pc];
+        if (search > 0) {
+            low = 0;
+            high = search - 1;
+            while (low < high) {
+                mid = (low + high) >>> 1;
+                if (c > table[pc + 2 * mid]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return pc + 2 * low;
+        }
+        if (search < 0) {
+            pc = pages[-1 - search + (c >> 8)];
+        }
+        while (c > table[pc]) {
+            pc += 2;
+        }
+        return pc;
+    }
+
     private int scan(int mode) throws IOException {
         int pc;    // idx in table
         int c;
@@ -117,13 +176,13 @@ public class Scanner {
         int endOfs;
 
         matchedTerminal = ERROR;
-        matchedEndOfs = 0;
         endOfs = src.getEndOfs();
+        matchedEndOfs = endOfs;  // nothing matched: empty token
         pc = start;
         do {
             terminal = table[pc + mode];
             pc += modeCount;
-            if (terminal != NO_TERMINAL) {
+            if (terminal >= 0) {
                 matchedTerminal = terminal;
                 matchedEndOfs = endOfs;
             }
@@ -132,11 +191,12 @@ public class Scanner {
                 src.resetEndOfs(matchedEndOfs);
                 return matchedTerminal == ERROR ? EOF : matchedTerminal;
             }
-            endOfs++;
-            while (c > table[pc]) {
-                pc += 2;
+            endOfs = src.getEndOfs();
+            if (c < ScannerFactory.ASCII) {
+                pc = ascii[rows[pc] + c];
+            } else {
+                pc = table[search(pc, c) + 1];
             }
-            pc = table[pc + 1];
         } while (pc != ERROR_PC);
         src.resetEndOfs(matchedEndOfs);
         return matchedTerminal;
@@ -22,6 +22,7 @@ import net.oneandone.sushi.util.IntBitSet;
 
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,24 +31,48 @@ import java.util.List;
  * it FA if FA could be called FABuffer. But in this case, FABuilder
  * would become FABufferBuilder ...</p>
  *
- * <pre>
- * TODO
- * o binary search in TableFA?
- *  o Java Scanner needs up to 60 comparisons
- * </pre>
+ * <p>Scanner use the table in three ways: ascii characters are looked up directly; other characters are searched
+ * linearly in states with few ranges, with a binary search in states with more ranges, and states with many ranges
+ * (e.g. the Unicode identifier classes of the Java scanner; it has states with more than 60 ranges) use a page table
+ * to start the linear search at the first range of the character's high byte. All of this is derived from the
+ * table when the factory is created; the serialized form is just the table.</p>
+ *
+ * <p>Tables are serialized as char arrays, because they compile into compact string constants. Small tables use
+ * one char per entry. Tables with more than 64k entries or with terminals beyond NO_TERMINAL are "wide": they
+ * use two chars per entry, high half first. Scanners always use the decoded int entries.</p>
  */
 public class ScannerFactory {
     public static final String SCANNER_TOO_BIG = "scanner too big";
 
+    /** Number of characters with a direct entry in the ascii table. */
+    public static final int ASCII = 128;
+
+    /** States with up to this number of ranges are searched linearly */
+    public static final int LINEAR_RANGES = 8;
+
+    /** States with up to this number of ranges use a binary search, states with more ranges use a page table */
+    public static final int BINARY_RANGES = 64;
+
+    /** Number of entries in a page table: one for every high byte */
+    public static final int PAGES = 256;
+
     /** finite deterministic automaton */
-    private final int start;
+    final int start;
 
-    private final int modeCount;
+    final int modeCount;
+
+    /**
+     * Serialized form of entries, see class comment.
+     */
+    final char[] table;
+
+    /** true if the table uses two chars per entry */
+    final boolean wide;
 
     /**
      * For every state that's not the error state
      *   * for each mode:
-     *       end symbol - the terminal to return if this state is an end state; NO_TERMINAL otherwise
+     *       end symbol - the terminal to return if this state is an end state; -1 otherwise
      *   * for each transition (aka range):
      *       last       - the last character of the range, or Scanner.ERROR_PC for errors
      *       pc         - state to goto when this range is matched
@@ -61,15 +86,34 @@ public class ScannerFactory {
      *   slightly slower. It seems that lower ranges should be testet first.
      * o the Java ranges has states with more than 60 ranges ...
      */
-    private final char[] table;
+    final int[] entries;
+
+    /**
+     * Derived from entries, for faster scanning of ascii characters. Indexed by the pc of the first range
+     * of a state; contains the offset of the state's row in ascii.
+     */
+    final int[] rows;
+
+    /** For every state a row of ASCII entries: the pc to goto for this character, or Scanner.ERROR_PC. */
+    final int[] ascii;
+
+    /**
+     * Derived from entries, selects the search for non-ascii characters. Indexed by the pc of the first range
+     * of a state; contains 0 for a linear search, the number of ranges for a binary search, or -1 - the offset
+     * of the state's row in pages.
+     */
+    final int[] lookup;
+
+    /** For every state with a page table a row of PAGES entries: the pc of the first range for this high byte. */
+    final int[] pages;
 
     //--
 
     public static ScannerFactory create(
         FA fa, int errorSi, ParserTable parserTable, IntBitSet whites, PrintWriter verbose, PrintWriter listing)
             throws GenericException {
-        List modes;  // list of IntSets
-        char[] table;
+        List<IntBitSet> modes;
+        int[] entries;
 
         if (listing != null) {
             listing.println("Scanner\n");
@@ -82,23 +126,23 @@ public class ScannerFactory {
         if (verbose != null) {
             verbose.println("building table fa");
         }
-        table = createTable(fa, errorSi, modes);
-        return new ScannerFactory(fa.getStart(), modes.size(), table);
+        entries = createEntries(fa, errorSi, modes);
+        return encode(fa.getStart(), modes.size(), entries);
     }
 
     public static ScannerFactory createSimple(FA fa, int errorSi, IntBitSet terminals)
         throws GenericException {
-        char[] data;
+        int[] entries;
         List<IntBitSet> modes;
 
         modes = new ArrayList<IntBitSet>();
         modes.add(new IntBitSet(terminals));
-        data = createTable(fa, errorSi, modes);
-        return new ScannerFactory(fa.getStart(), 1, data);
+        entries = createEntries(fa, errorSi, modes);
+        return encode(fa.getStart(), 1, entries);
     }
 
-    private static char[] createTable(FA fa, int errorSi, List<IntBitSet> modes) throws GenericException {
-        char[] table;
+    private static int[] createEntries(FA fa, int errorSi, List<IntBitSet> modes) {
+        int[] table;
         int ti, si;
         int maxTi, maxSi;
         State state;
@@ -116,16 +160,13 @@ public class ScannerFactory {
         for (si = 0; si < maxSi; si++) {
             if (si != errorSi) {
                 ofs[si] = pc;
-                pc += modeCount; // one terminal or NO_TERMINAL per mode
+                pc += modeCount; // one terminal or -1 per mode
                 pc += fa.get(si).size() * 2;
             }
         }
-        if (pc >= Character.MAX_VALUE) {
-            throw new GenericException(SCANNER_TOO_BIG);
-        }
 
         // copy fa into table
-        table = new char[pc];
+        table = new int[pc];
         pc = 0;
         for (si = 0; si < maxSi; si++) {
             if (si != errorSi) {
@@ -151,8 +192,7 @@ public class ScannerFactory {
                     if (state.getEnd(ti) == errorSi) {
                         table[pc] = Scanner.ERROR_PC;
                     } else {
-                        // this cast is safe because max pc was tested above
-                        table[pc] = (char) ofs[state.getEnd(ti)];
+                        table[pc] = ofs[state.getEnd(ti)];
                     }
                     pc++;
                 }
@@ -164,40 +204,197 @@ public class ScannerFactory {
         return table;
     }
 
-    private static char getEndSymbol(FA fa, int si, IntBitSet modeSymbols) throws GenericException {
+    /** @return terminal or -1 */
+    private static int getEndSymbol(FA fa, int si, IntBitSet modeSymbols) {
         Label label;
-        int endSymbol;
         State state;
 
         if (!fa.isEnd(si)) {
-            return Scanner.NO_TERMINAL;
+            return -1;
         }
         state = fa.get(si);
         label = (Label) state.getLabel();
-        endSymbol = label.getSymbol(modeSymbols);
-        if (endSymbol == -1) {
-            return Scanner.NO_TERMINAL;
+        return label.getSymbol(modeSymbols);
+    }
+
+    /** Chooses the compact form if possible. */
+    public static ScannerFactory encode(int start, int modeCount, int[] entries) throws GenericException {
+        boolean wide;
+        char[] table;
+        int pc;
+        int i;
+
+        wide = entries.length >= Character.MAX_VALUE;
+        for (pc = 0; !wide && pc < entries.length; pc = skipRanges(entries, pc + modeCount)) {
+            for (i = 0; i < modeCount; i++) {
+                if (entries[pc + i] >= Scanner.NO_TERMINAL) {
+                    wide = true;
+                }
+            }
         }
-        if (endSymbol >= Scanner.NO_TERMINAL) {
-            throw new GenericException(SCANNER_TOO_BIG);
+        if (wide) {
+            if (entries.length > Integer.MAX_VALUE / 2) {
+                throw new GenericException(SCANNER_TOO_BIG);
+            }
+            table = new char[entries.length * 2];
+            for (i = 0; i < entries.length; i++) {
+                table[i * 2] = (char) (entries[i] >>> 16);
+                table[i * 2 + 1] = (char) entries[i];
+            }
+        } else {
+            table = new char[entries.length];
+            for (i = 0; i < entries.length; i++) {
+                // -1 is used for end symbols only
+                table[i] = entries[i] == -1 ? (char) Scanner.NO_TERMINAL : (char) entries[i];
+            }
         }
-        return (char) endSymbol;
+        return new ScannerFactory(start, modeCount, table, wide);
     }
 
+    /** For mappers compiled before wide tables were added. */
     public ScannerFactory(int start, int modeCount, char[] table) {
+        this(start, modeCount, table, false);
+    }
+
+    public ScannerFactory(int start, int modeCount, char[] table, boolean wide) {
         if (start == -1) {
             throw new IllegalArgumentException();
         }
         this.start = start;
         this.modeCount = modeCount;
         this.table = table;
+        this.wide = wide;
+        this.entries = wide ? decodeWide(table) : decodeCompact(modeCount, table);
+        this.rows = new int[entries.length];
+        this.ascii = createAscii(modeCount, entries, rows);
+        this.lookup = new int[entries.length];
+        this.pages = createPages(modeCount, entries, lookup);
+    }
+
+    private static int[] decodeWide(char[] table) {
+        int[] result;
+        int i;
+
+        result = new int[table.length / 2];
+        for (i = 0; i < result.length; i++) {
+            result[i] = (table[i * 2] << 16) | table[i * 2 + 1];
+        }
+        return result;
+    }
+
+    private static int[] decodeCompact(int modeCount, char[] table) {
+        int[] result;
+        int pc;
+        int i;
+
+        result = new int[table.length];
+        for (i = 0; i < table.length; i++) {
+            result[i] = table[i];
+        }
+        for (pc = 0; pc < result.length; pc = skipRanges(result, pc + modeCount)) {
+            for (i = 0; i < modeCount; i++) {
+                if (result[pc + i] == Scanner.NO_TERMINAL) {
+                    result[pc + i] = -1;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int[] createAscii(int modeCount, int[] table, int[] rows) {
+        int states;
+        int pc;
+        int row;
+        int c;
+        int[] result;
+
+        states = 0;
+        for (pc = 0; pc < table.length; pc = skipRanges(table, pc + modeCount)) {
+            states++;
+        }
+        result = new int[states * ASCII];
+        row = 0;
+        for (pc = 0; pc < table.length; pc = skipRanges(table, pc)) {
+            pc += modeCount;
+            rows[pc] = row;
+            for (c = 0; c < ASCII; c++) {
+                while (c > table[pc]) {
+                    pc += 2;
+                }
+                result[row + c] = table[pc + 1];
+            }
+            row += ASCII;
+        }
+        return result;
+    }
+
+    private static int[] createPages(int modeCount, int[] table, int[] lookup) {
+        int count;
+        int pc;
+        int ranges;
+        int row;
+        int page;
+        int[] result;
+
+        count = 0;
+        for (pc = 0; pc < table.length; pc = skipRanges(table, pc + modeCount)) {
+            if (countRanges(table, pc + modeCount) > BINARY_RANGES) {
+                count++;
+            }
+        }
+        result = new int[count * PAGES];
+        row = 0;
+        for (pc = 0; pc < table.length; pc = skipRanges(table, pc)) {
+            pc += modeCount;
+            ranges = countRanges(table, pc);
+            if (ranges <= LINEAR_RANGES) {
+                lookup[pc] = 0;
+            } else if (ranges <= BINARY_RANGES) {
+                lookup[pc] = ranges;
+            } else {
+                lookup[pc] = -1 - row;
+                for (page = 0; page < PAGES; page++) {
+                    while ((page << 8) > table[pc]) {
+                        pc += 2;
+                    }
+                    result[row + page] = pc;
+                }
+                row += PAGES;
+            }
+        }
+        return result;
+    }
+
+    private static int countRanges(int[] table, int pc) {
+        return (skipRanges(table, pc) - pc) / 2;
+    }
+
+    /** @return pc of the next state */
+    private static int skipRanges(int[] table, int pc) {
+        while (table[pc] != Character.MAX_VALUE) {
+            pc += 2;
+        }
+        return pc + 2;
     }
 
     public Scanner newInstance(Position pos, Reader src) {
-        return new Scanner(start, modeCount, table, pos, src);
+        return newInstance(new Buffer(pos, src));
+    }
+
+    public Scanner newInstance(Position pos, CharSequence src) {
+        return newInstance(new CharSequenceInput(pos, src));
+    }
+
+    /** Scans UTF-8 bytes without decoding them into a character buffer first. */
+    public Scanner newInstance(Position pos, ByteBuffer utf8) {
+        return newInstance(new Utf8Input(pos, utf8));
+    }
+
+    public Scanner newInstance(Input src) {
+        return new Scanner(this, src);
     }
 
     public int size() {
-        return table.length;
+        return entries.length;
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.scanner;
+
+import java.io.IOException;
+
+/**
+ * Pull-style access to the tokens of a CharSequence, for applications that don't need a parser. Does not allocate
+ * objects per token: positions are computed on demand, and the text is a view that's valid until the next call
+ * of next. Offsets are character indexes into the CharSequence. White space tokens are returned like all others.
+ */
+public class TokenCursor {
+    private final CharSequence src;
+    private final CharSequenceInput input;
+    private final Scanner scanner;
+    private final int mode;
+
+    /** position of the current token, computed on demand */
+    private final Position position;
+    private boolean positionValid;
+
+    private final Text text;
+
+    /** current terminal, Scanner.EOF, or Scanner.ERROR; Integer.MIN_VALUE before the first call to next */
+    private int terminal;
+
+    /** @param mode  scanner mode, e.g. Parser.getTable().getMode(Parser.getTable().getStartState()) */
+    public TokenCursor(ScannerFactory factory, int mode, Position position, CharSequence src) {
+        this.src = src;
+        this.input = new CharSequenceInput(position, src);
+        this.scanner = factory.newInstance(input);
+        this.mode = mode;
+        this.position = new Position();
+        this.positionValid = false;
+        this.text = new Text();
+        this.terminal = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Scans the next token. Once EOF or ERROR has been returned, subsequent calls return the same value.
+     *
+     * @return terminal, Scanner.EOF or Scanner.ERROR
+     */
+    public int next() {
+        if (terminal == Scanner.EOF || terminal == Scanner.ERROR) {
+            return terminal;
+        }
+        positionValid = false;
+        try {
+            terminal = scanner.next(mode);
+        } catch (IOException e) {
+            throw new IllegalStateException("CharSequenceInput does not throw IOExceptions", e);
+        }
+        return terminal;
+    }
+
+    /**
+     * Scans up to terminals.length tokens. Tokens are contiguous: the end of token i is the start of token i + 1,
+     * the end of the last token is getEnd().
+     *
+     * @param terminals  receives terminals; the last one might be Scanner.ERROR
+     * @param offsets    receives start offsets, at least as long as terminals
+     * @return number of tokens stored, 0 at EOF
+     */
+    public int fill(int[] terminals, int[] offsets) {
+        int count;
+        int t;
+
+        for (count = 0; count < terminals.length; count++) {
+            t = next();
+            if (t == Scanner.EOF) {
+                break;
+            }
+            terminals[count] = t;
+            offsets[count] = input.getStartOfs();
+            if (t == Scanner.ERROR) {
+                count++;
+                break;
+            }
+        }
+        return count;
+    }
+
+    public int getTerminal() {
+        return terminal;
+    }
+
+    public int getStart() {
+        return input.getStartOfs();
+    }
+
+    /** Equals getStart() for Scanner.EOF and Scanner.ERROR */
+    public int getEnd() {
+        return input.getEndOfs();
+    }
+
+    public int getLine() {
+        return position().getLine();
+    }
+
+    public int getColumn() {
+        return position().getColumn();
+    }
+
+    /** @return view on the text of the current token, valid until next is called */
+    public CharSequence getText() {
+        return text;
+    }
+
+    private Position position() {
+        if (!positionValid) {
+            scanner.getPosition(position);
+            positionValid = true;
+        }
+        return position;
+    }
+
+    private class Text implements CharSequence {
+        @Override
+        public int length() {
+            return getEnd() - getStart();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("" + index);
+            }
+            return src.charAt(getStart() + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return src.subSequence(getStart() + start, getStart() + end);
+        }
+
+        @Override
+        public String toString() {
+            return src.subSequence(getStart(), getEnd()).toString();
+        }
+    }
+}
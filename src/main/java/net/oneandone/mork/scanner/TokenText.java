@@ -0,0 +1,70 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.scanner;
+
+/**
+ * Token text that refers to the retained input instead of copying it. The string is created when toString is
+ * called for the first time; attributions call it before passing the text to a function.
+ */
+public final class TokenText implements CharSequence {
+    /** Returns the string for TokenText objects, all other objects are returned as they are. */
+    public static Object materialize(Object obj) {
+        return obj instanceof TokenText ? obj.toString() : obj;
+    }
+
+    private final CharSequence src;
+    private final int start;
+    private final int end;
+
+    /** null until toString is called */
+    private String string;
+
+    public TokenText(CharSequence src, int start, int end) {
+        this.src = src;
+        this.start = start;
+        this.end = end;
+        this.string = null;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        return src.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || from > to || to > end - start) {
+            throw new IndexOutOfBoundsException(from + ".." + to);
+        }
+        return new TokenText(src, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = src.subSequence(start, end).toString();
+        }
+        return string;
+    }
+}
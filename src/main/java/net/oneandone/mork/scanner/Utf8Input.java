@@ -0,0 +1,253 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Input that scans UTF-8 bytes, e.g. a mapped file, without a CharsetDecoder. Ascii bytes are returned as they are,
+ * multi-byte sequences are decoded inline; text is decoded only when createString is called for a token.
+ * Offsets are byte indexes into the buffer. Supplementary characters are returned as surrogate pairs, the
+ * offset between the two surrogates points to the first continuation byte of the sequence. Malformed bytes
+ * are returned as U+FFFD, like InputStreamReader does.
+ */
+public class Utf8Input implements Input {
+    public static final char REPLACEMENT = '\ufffd';
+
+    /** Maps the specified file into memory. */
+    public static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + ": file too large to map: " + channel.size());
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    //--
+
+    private final ByteBuffer bytes;
+    /** buffer position, the first byte to scan */
+    private final int base;
+    private final int limit;
+
+    /** start position */
+    private final Position position;
+
+    /** line starts, indexed when characters are read for the first time */
+    private final Lines lines;
+
+    private int start;
+    private int end;
+
+    /** position offset of end */
+    private int endChars;
+
+    /** Bytes before this offset have been read and indexed for line starts. */
+    private int furthest;
+
+    /** character decoded by the last call to next */
+    private char decoded;
+
+    /** reused by createInterned */
+    private char[] scratch;
+
+    /** Scans the bytes between the buffer's position and its limit. */
+    public Utf8Input(Position position, ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.limit = bytes.limit();
+        this.position = position;
+        this.lines = new Lines(position);
+        this.base = bytes.position();
+        this.start = base;
+        this.end = start;
+        this.endChars = position.getOffset();
+        this.furthest = start;
+        this.scratch = new char[64];
+    }
+
+    @Override
+    public int read() {
+        if (end == limit) {
+            return Scanner.EOF;
+        }
+        end = next(end);
+        endChars++;
+        if (end > furthest) {
+            furthest = end;
+            if (decoded == '\n') {
+                lines.addStart(endChars);
+            }
+        }
+        return decoded;
+    }
+
+    @Override
+    public void eat() {
+        position.advance(lines, endChars - position.getOffset());
+        start = end;
+    }
+
+    @Override
+    public int getEndOfs() {
+        return end;
+    }
+
+    @Override
+    public void resetEndOfs(int ofs) {
+        int i;
+
+        // un-count the characters read after ofs, usually the one character of lookahead
+        i = ofs;
+        while (i < end) {
+            i = next(i);
+            endChars--;
+        }
+        end = ofs;
+    }
+
+    @Override
+    public String createString() {
+        char[] chars;
+
+        // a token never has more characters than bytes
+        chars = new char[end - start];
+        return new String(chars, 0, decode(chars));
+    }
+
+    @Override
+    public CharSequence createText() {
+        return createString();
+    }
+
+    @Override
+    public String createInterned(Interner interner) {
+        if (scratch.length < end - start) {
+            scratch = new char[Math.max(end - start, scratch.length * 2)];
+        }
+        return interner.intern(scratch, 0, decode(scratch));
+    }
+
+    @Override
+    public void getPosition(Position result) {
+        result.set(position);
+    }
+
+    @Override
+    public int getOffset() {
+        return position.getOffset();
+    }
+
+    @Override
+    public Lines getLines() {
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "utf8 input {start=" + start + ", end=" + end + ", limit=" + limit + "}";
+    }
+
+    //--
+
+    /** @return number of characters between start and end stored in chars */
+    private int decode(char[] chars) {
+        int count;
+        int i;
+
+        count = 0;
+        i = start;
+        while (i < end) {
+            i = next(i);
+            chars[count++] = decoded;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes the character at the specified offset into <code>decoded</code>.
+     * @return offset of the next character
+     */
+    private int next(int ofs) {
+        byte b;
+
+        b = bytes.get(ofs);
+        if (b >= 0) {
+            decoded = (char) b;
+            return ofs + 1;
+        }
+        return nextMultiByte(ofs, b);
+    }
+
+    private int nextMultiByte(int ofs, int b) {
+        int c;
+
+        if ((b & 0xe0) == 0xc0) {
+            if (isContinuation(ofs + 1)) {
+                c = ((b & 0x1f) << 6) | (bytes.get(ofs + 1) & 0x3f);
+                if (c >= 0x80) {
+                    decoded = (char) c;
+                    return ofs + 2;
+                }
+            }
+        } else if ((b & 0xf0) == 0xe0) {
+            if (isContinuation(ofs + 1) && isContinuation(ofs + 2)) {
+                c = ((b & 0x0f) << 12) | ((bytes.get(ofs + 1) & 0x3f) << 6) | (bytes.get(ofs + 2) & 0x3f);
+                if (c >= 0x800 && !Character.isSurrogate((char) c)) {
+                    decoded = (char) c;
+                    return ofs + 3;
+                }
+            }
+        } else if ((b & 0xf8) == 0xf0) {
+            c = supplementary(ofs);
+            if (c != -1) {
+                decoded = Character.highSurrogate(c);
+                return ofs + 1;
+            }
+        } else if ((b & 0xc0) == 0x80) {
+            // between the surrogates of a supplementary character?
+            c = ofs > base ? supplementary(ofs - 1) : -1;
+            if (c != -1) {
+                decoded = Character.lowSurrogate(c);
+                return ofs + 3;
+            }
+        }
+        decoded = REPLACEMENT;
+        return ofs + 1;
+    }
+
+    /** @return code point of the 4 byte sequence starting at ofs, or -1 if it's malformed */
+    private int supplementary(int ofs) {
+        int c;
+
+        if ((bytes.get(ofs) & 0xf8) != 0xf0
+                || !isContinuation(ofs + 1) || !isContinuation(ofs + 2) || !isContinuation(ofs + 3)) {
+            return -1;
+        }
+        c = ((bytes.get(ofs) & 0x07) << 18) | ((bytes.get(ofs + 1) & 0x3f) << 12)
+                | ((bytes.get(ofs + 2) & 0x3f) << 6) | (bytes.get(ofs + 3) & 0x3f);
+        return c >= Character.MIN_SUPPLEMENTARY_CODE_POINT && c <= Character.MAX_CODE_POINT ? c : -1;
+    }
+
+    private boolean isContinuation(int ofs) {
+        return ofs < limit && (bytes.get(ofs) & 0xc0) == 0x80;
+    }
+}
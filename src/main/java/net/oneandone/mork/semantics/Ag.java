@@ -69,7 +69,7 @@ public class Ag {
         layout = createLayout(firstAttrs);
         internalAttrs = createInternalAttributes(layout);
         visits = OagBuilder.run(this, layout, null);
-        return new Oag(visits, internalAttrs);
+        return new Oag(visits, internalAttrs, grammar.getSymbolTable());
     }
 
     private Layout createLayout(List<Attribute> firstAttrs) {
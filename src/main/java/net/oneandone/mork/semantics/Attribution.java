@@ -17,6 +17,7 @@ package net.oneandone.mork.semantics;
 
 import net.oneandone.mork.reflect.Function;
 import net.oneandone.mork.scanner.Position;
+import net.oneandone.mork.scanner.TokenText;
 
 import java.io.PrintWriter;
 import java.io.Serializable;
@@ -36,8 +37,6 @@ public class Attribution implements Serializable {
     private final int[] argsOfs;
     private final int[] argsAttr;
 
-    private final transient Object[] args;
-
     /**
      * Nonterminal attribution.
      * ofs = -1 for left hand side.
@@ -48,27 +47,43 @@ public class Attribution implements Serializable {
         this.resultAttr = resultAttr;
         this.argsOfs = argsOfs;
         this.argsAttr = argsAttr;
-        this.args = new Object[argsOfs.length];
     }
 
-    public Object newInstance() {
-        return new Attribution(function, resultOfs, resultAttr, argsOfs, argsAttr);
+    public Function getFunction() {
+        return function;
+    }
+
+    public int getResultOfs() {
+        return resultOfs;
+    }
+
+    public int getResultAttr() {
+        return resultAttr;
+    }
+
+    public int[] getArgsOfs() {
+        return argsOfs;
     }
 
+    public int[] getArgsAttr() {
+        return argsAttr;
+    }
 
     /**
-     * Caution: do not call this method concurrently!
+     * Attributions are immutable, so this method may be called concurrently.
      *
      * @param ctx  left-hand-side node
      */
     public void eval(Node ctx, PrintWriter verbose) throws SemanticError {
+        Object[] args;
         Object result;
         int i;
         Throwable t;
         Position pos;
 
+        args = new Object[argsOfs.length];
         for (i = 0; i < args.length; i++) {
-            args[i] = ctx.get(argsOfs[i]).attrs[argsAttr[i]];
+            args[i] = TokenText.materialize(ctx.get(argsOfs[i]).attrs[argsAttr[i]]);
         }
         try {
             result = function.invoke(args);
@@ -82,24 +97,24 @@ public class Attribution implements Serializable {
             }
             if (t instanceof Exception) {
                 if (verbose != null) {
-                    log("[FAILURE]", verbose);
+                    log("[FAILURE]", args, verbose);
                 }
                 pos = new Position();
-                pos.set(ctx.position);
+                ctx.getPosition(pos);
                 throw new SemanticError(pos, (Exception) t);
             }
             throw new RuntimeException("illegal exception type: " + t);
         }
         ctx.get(resultOfs).attrs[resultAttr] = result;
         if (verbose != null) {
-            log(result, verbose);
+            log(result, args, verbose);
         }
     }
 
     /**
      * @param verbose != null
      */
-    private void log(Object result, PrintWriter verbose) {
+    private void log(Object result, Object[] args, PrintWriter verbose) {
         int i;
 
         verbose.print("attribution: ");
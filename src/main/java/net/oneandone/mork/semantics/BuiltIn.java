@@ -30,55 +30,49 @@ public class BuiltIn {
     //--
     // character and string parsing
 
-    // Helper for escapeCharacter and unicodeCharacter - set
-    // by parseChar and parseString
-    private static String text = null;
-    private static int ofs;
-    private static int len;
+    // Helper for escapeCharacter and unicodeCharacter - an instance is created
+    // by parseChar and parseString, mappers may run concurrently
+    private final String text;
+    private int ofs;
+    private final int len;
+
+    private BuiltIn(String text) {
+        this.text = text;
+        this.ofs = 1;
+        this.len = text.length();
+    }
 
     public static char parseChar(String textInit) throws IllegalLiteral {
+        BuiltIn literal;
         char result;
 
-        text = textInit;
-        ofs = 1;
-        len = text.length();
-
-        try {
-            if ((len > 2) && (text.charAt(0) == '\'') && (text.charAt(len - 1) == '\'')) {
-                result = charOrEscape();
-                if (ofs + 1 == len) {
-                    return result;
-                }
+        literal = new BuiltIn(textInit);
+        if ((literal.len > 2) && (textInit.charAt(0) == '\'') && (textInit.charAt(literal.len - 1) == '\'')) {
+            result = literal.charOrEscape();
+            if (literal.ofs + 1 == literal.len) {
+                return result;
             }
-            throw new IllegalLiteral("illegal character literal: " + textInit);
-        } finally {
-            text = null;
         }
+        throw new IllegalLiteral("illegal character literal: " + textInit);
     }
 
     public static String parseString(String textInit) throws IllegalLiteral {
+        BuiltIn literal;
         StringBuilder result;
 
-        try {
-            text = textInit;
-            len = text.length();
-            ofs = 1;
-            result = new StringBuilder();
-
-            if ((len >= 2) && (text.charAt(0) == '"') && (text.charAt(len - 1) == '"')) {
-                while (ofs + 1 < len) {
-                    result.append(charOrEscape());
-                }
-            } else {
-                throw new IllegalLiteral("illegal string literal: " + textInit);
+        literal = new BuiltIn(textInit);
+        result = new StringBuilder();
+        if ((literal.len >= 2) && (textInit.charAt(0) == '"') && (textInit.charAt(literal.len - 1) == '"')) {
+            while (literal.ofs + 1 < literal.len) {
+                result.append(literal.charOrEscape());
             }
-            return result.toString();
-        } finally {
-            text = null;
+        } else {
+            throw new IllegalLiteral("illegal string literal: " + textInit);
         }
+        return result.toString();
     }
 
-    private static char charOrEscape() throws IllegalLiteral {
+    private char charOrEscape() throws IllegalLiteral {
         int result;
 
         if (text.charAt(ofs) == '\\') {
@@ -99,7 +93,7 @@ public class BuiltIn {
         }
     }
 
-    private static int unicodeEscape() {
+    private int unicodeEscape() {
         int start;
         int i, v;
         int result;
@@ -127,7 +121,7 @@ public class BuiltIn {
         return result;
     }
 
-    private static int charEscape() {
+    private int charEscape() {
         if (ofs < len) {
             switch (text.charAt(ofs++)) {
             case 'b':       // backspace
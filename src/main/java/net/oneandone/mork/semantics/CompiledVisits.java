@@ -0,0 +1,57 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.semantics;
+
+import net.oneandone.mork.scanner.Position;
+
+/**
+ * Visit sequences of all productions, compiled to bytecode by the mapper compiler. Does the same as Node.compute
+ * interpreting Visits, but reads the attributes and calls the attribution functions directly, without argument
+ * arrays.
+ */
+public abstract class CompiledVisits {
+    /**
+     * Runs the evaluations of the visit sequence of the specified production, starting at instruction ofs, up to
+     * the next visit or return instruction.
+     *
+     * @return the visit or return instruction; the length of the visit sequence if it has ended
+     */
+    public abstract int visit(int production, Node node, int ofs) throws SemanticError;
+
+    /**
+     * Called by generated code if a visit throws an exception. Exceptions thrown by attribution functions are
+     * reported like Attribution.eval does.
+     */
+    public static SemanticError failed(Node node, Throwable t) {
+        Position pos;
+
+        if (t instanceof SemanticError) {
+            return (SemanticError) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t instanceof Exception) {
+            pos = new Position();
+            node.getPosition(pos);
+            return new SemanticError(pos, (Exception) t);
+        }
+        throw new RuntimeException("illegal exception type: " + t);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package net.oneandone.mork.semantics;
 
+import net.oneandone.mork.scanner.Lines;
 import net.oneandone.mork.scanner.Position;
 
 import java.io.PrintWriter;
@@ -26,7 +27,6 @@ import java.io.PrintWriter;
 public class Node {
     private final NodeFactory pool;
 
-    public final Position position;
     public final Node[] children; // always != null
     public final Object[] attrs;  // always != null
     private final Visits visits;  // always != null
@@ -34,10 +34,24 @@ public class Node {
     // current position in visit sequence
     private int ofs;
 
+    /** line index of the input; null for empty nonterminals */
+    Lines lines;
+
+    /** position offset of the first character */
+    int start;
+
     private static final Node[] NO_CHILDREN = new Node[0];
 
     private static final Object[] NO_ATTRIBUTES = new Object[0];
 
+    /** Value for attributes that have been passed to a RecordHandler. */
+    public static final Object STREAMED = new Object() {
+        @Override
+        public String toString() {
+            return "streamed";
+        }
+    };
+
     //-- Construction
 
     public Node(NodeFactory pool, int children, int attributes, Visits visits) {
@@ -53,19 +67,50 @@ public class Node {
             this.attrs = new Object[attributes];
         }
         this.visits = visits;
-        this.position = new Position();
     }
 
     public void init() {
         this.ofs = 0;
     }
 
+    /** Drops all references, called when the node goes back to its pool. */
+    void clear() {
+        int i;
+
+        for (i = 0; i < attrs.length; i++) {
+            attrs[i] = null;
+        }
+        for (i = 0; i < children.length; i++) {
+            children[i] = null;
+        }
+        lines = null;
+    }
+
     //-- access
 
+    /** @return position offset of the first character */
+    public int getOffset() {
+        return start;
+    }
+
+    /** Assigns the position of the first character. */
+    public void getPosition(Position result) {
+        if (lines == null) {
+            result.set(null, 1, 1, start);
+        } else {
+            lines.getPosition(start, result);
+        }
+    }
+
     public String getText() {
         return "TODO";
     }
 
+    /** Hands this node back to its factory; it must not be used afterwards. */
+    public void free() {
+        pool.free(this);
+    }
+
     public Node get(int ofs) {
         if (ofs == -1) {
             return this;
@@ -75,26 +120,38 @@ public class Node {
     }
 
     public void compute(PrintWriter log) throws SemanticError {
-        Object visit;
-        int next;
+        int[] code;
+        int instruction;
         int max;
         int i;
         Node n;
+        CompiledVisits compiled;
 
         if (log != null) {
             log.println("visit " + hashCode());
         }
-        max = visits.size();
+        code = visits.code;
+        max = code.length;
+        compiled = log == null ? pool.compiled : null;
         while (ofs < max) {
-            visit = visits.get(ofs++);
-            if (visit instanceof Attribution) {
-                ((Attribution) visit).eval(this, log);
-            } else {
-                next = Visits.getOfs(visit);
-                if (next == -1) {
-                    return;  // compute attributes in parent, come back later
+            if (compiled != null) {
+                ofs = compiled.visit(pool.production, this, ofs);
+                if (ofs == max) {
+                    break;
                 }
-                children[next].compute(log);
+            }
+            instruction = code[ofs++];
+            switch (instruction & 3) {
+                case Visits.EVAL:
+                    visits.attributions[instruction >> 2].eval(this, log);
+                    break;
+                case Visits.VISIT:
+                    children[instruction >> 2].compute(log);
+                    break;
+                case Visits.RETURN:
+                    return;  // compute attributes in parent, come back later
+                default:
+                    throw new IllegalStateException();
             }
         }
         max = children.length;
@@ -102,5 +159,6 @@ public class Node {
             n = children[i];
             n.pool.free(n);
         }
+        pool.completed(this);
     }
 }
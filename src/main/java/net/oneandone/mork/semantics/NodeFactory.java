@@ -16,38 +16,79 @@
 package net.oneandone.mork.semantics;
 
 import net.oneandone.mork.parser.Parser;
+import net.oneandone.mork.scanner.Interner;
+import net.oneandone.mork.scanner.Lines;
 import net.oneandone.mork.scanner.Position;
 import net.oneandone.mork.scanner.Scanner;
+import net.oneandone.mork.scanner.TokenText;
+
+import java.util.Arrays;
 
 public class NodeFactory {
-    private final Node[] pool;
+    /** pools grow up to this size */
+    public static final int MAX_POOL = 1024;
+
+    /** freed nodes; grows when a node is freed and the pool is full */
+    private Node[] pool;
     private int used;
 
+    /** number of nodes taken from the pool */
+    private long hits;
+    /** number of nodes allocated because the pool was empty */
+    private long misses;
+
     private final int children;
     private final int[] internalAttrs;
     private final Visits visits;
 
+    /** null for nonterminals */
+    private final Interner interner;
+
+    /** null to interpret the visits */
+    final CompiledVisits compiled;
+    /** production number for compiled; -1 for terminals */
+    final int production;
+
+    /** null if the nodes are no records */
+    private RecordHandler recordHandler;
+
     private static final Visits NO_VISITS = new Visits(new Object[0]);
 
     /** terminal **/
-    public NodeFactory(int size, int[] internalAttrs) {
-        this(size, 0, internalAttrs, NO_VISITS);
+    public NodeFactory(int size, int[] internalAttrs, Interner interner) {
+        this(size, 0, internalAttrs, NO_VISITS, interner, null, -1);
     }
 
     public NodeFactory(int size, int children, int[] internalAttrs, Visits visits) {
+        this(size, children, internalAttrs, visits, null, -1);
+    }
+
+    /** @param compiled null to interpret the visits */
+    public NodeFactory(int size, int children, int[] internalAttrs, Visits visits, CompiledVisits compiled,
+                       int production) {
+        this(size, children, internalAttrs, visits, null, compiled, production);
+    }
+
+    private NodeFactory(int size, int children, int[] internalAttrs, Visits visits, Interner interner,
+                        CompiledVisits compiled, int production) {
         this.pool = new Node[size];
 
         this.children = children;
         this.internalAttrs = internalAttrs;
         this.visits = visits;
+        this.interner = interner;
+        this.compiled = compiled;
+        this.production = production;
     }
 
     private Node allocate() {
         Node node;
 
         if (used == 0) {
+            misses++;
             return new Node(this, children, internalAttrs.length, visits);
         } else {
+            hits++;
             used--;
             node = pool[used];
             node.init();
@@ -55,39 +96,97 @@ public class NodeFactory {
         }
     }
 
+    public void setRecordHandler(RecordHandler recordHandler) {
+        this.recordHandler = recordHandler;
+    }
+
+    /** Called when all visits of the node are done. */
+    public void completed(Node node) {
+        Object[] attrs;
+        int i;
+        Position position;
+
+        if (recordHandler != null) {
+            attrs = node.attrs;
+            for (i = 0; i < attrs.length; i++) {
+                attrs[i] = TokenText.materialize(attrs[i]);
+            }
+            position = new Position();
+            node.getPosition(position);
+            recordHandler.record(position, attrs);
+        }
+    }
+
     public void free(Node node) {
+        // pools outlive the run, don't let them keep the input alive through lazy text or line indexes
+        node.clear();
         if (used == pool.length) {
-            return;
+            if (used == MAX_POOL) {
+                return;
+            }
+            pool = Arrays.copyOf(pool, Math.min(used * 2, MAX_POOL));
         }
         pool[used] = node;
         used++;
     }
 
+    /** @return number of nodes the pool can hold; grows with the peak number of free nodes */
+    public int getPoolSize() {
+        return pool.length;
+    }
+
+    /** Grows the pool to the specified size (up to MAX_POOL) and fills it with new nodes. */
+    public void prepare(int size) {
+        size = Math.min(size, MAX_POOL);
+        if (size > pool.length) {
+            pool = Arrays.copyOf(pool, size);
+        }
+        while (used < size) {
+            pool[used] = new Node(this, children, internalAttrs.length, visits);
+            used++;
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
     public Node allocateTerminal(Scanner scanner, Object environment) {
-        Position pos;
+        Lines lines;
+        int start;
         Node node;
         Object[] attrs;
         int i;
         int max;
 
         node = allocate();
-        pos = node.position;
-        scanner.getPosition(pos);
+        lines = scanner.getLines();
+        start = scanner.getOffset();
+        node.lines = lines;
+        node.start = start;
         attrs = node.attrs;
         max = attrs.length;
         for (i = 0; i < max; i++) {
             switch (internalAttrs[i]) {  // TODO: duplicated code
                 case TEXT:
-                    attrs[i] = scanner.getText();
+                    // materialized by Attribution.eval when a function actually uses it
+                    attrs[i] = scanner.getLazyText();
+                    break;
+                case INTERN:
+                    attrs[i] = scanner.getInternedText(interner);
                     break;
                 case LINE:
-                    attrs[i] = new Integer(pos.getLine());
+                    attrs[i] = box(lines.getLine(start));
                     break;
                 case COLUMN:
-                    attrs[i] = new Integer(pos.getColumn());
+                    attrs[i] = box(lines.getColumn(start));
                     break;
                 case OFFSET:
-                    attrs[i] = new Integer(pos.getOffset());
+                    attrs[i] = box(start);
                     break;
                 case ENVIRONMENT:
                     attrs[i] = environment;
@@ -108,35 +207,41 @@ public class NodeFactory {
         int i;
         int max;
         Node[] children;
-        Position pos;
+        Lines lines;
+        int start;
 
         node = allocate();
         children = node.children;
-        pos = node.position;
         i = children.length;
         if (i == 0) {
             // TODO
+            lines = null;
+            start = 0;
         } else {
             do {
                 children[--i] = (Node) parser.pop();
             } while (i > 0);
-            pos.set(children[0].position);
+            lines = children[0].lines;
+            start = children[0].start;
         }
+        node.lines = lines;
+        node.start = start;
         attrs = node.attrs;
         max = attrs.length;
         for (i = 0; i < max; i++) {
             switch (internalAttrs[i]) {  // TODO: duplicated code
                 case TEXT:
+                case INTERN:
                     attrs[i] = node.getText();
                     break;
                 case LINE:
-                    attrs[i] = new Integer(pos.getLine());
+                    attrs[i] = box(lines == null ? 1 : lines.getLine(start));
                     break;
                 case COLUMN:
-                    attrs[i] = new Integer(pos.getColumn());
+                    attrs[i] = box(lines == null ? 1 : lines.getColumn(start));
                     break;
                 case OFFSET:
-                    attrs[i] = new Integer(pos.getOffset());
+                    attrs[i] = box(start);
                     break;
                 case ENVIRONMENT:
                     attrs[i] = environment;
@@ -153,12 +258,34 @@ public class NodeFactory {
 
     //--
 
+    /** boxed values for lines, columns and small offsets; filled on demand */
+    private static final Integer[] INTEGERS = new Integer[8192];
+
+    /**
+     * Like Integer.valueOf, but also caches the values most lines and columns have, so position attributes
+     * usually create no garbage. Racing threads may box a value twice, which is harmless.
+     */
+    private static Integer box(int value) {
+        Integer result;
+
+        if (value < 0 || value >= INTEGERS.length) {
+            return Integer.valueOf(value);
+        }
+        result = INTEGERS[value];
+        if (result == null) {
+            result = Integer.valueOf(value);
+            INTEGERS[value] = result;
+        }
+        return result;
+    }
+
     public static final int NONE = 0;
     public static final int TEXT = 1;
     public static final int LINE = 2;
     public static final int COLUMN = 3;
     public static final int OFFSET = 4;
     public static final int ENVIRONMENT = 5;
+    public static final int INTERN = 6;
 
     public static int lookupAttribute(String name) {
         if ("text".equals(name)) {
@@ -171,6 +298,8 @@ public class NodeFactory {
             return OFFSET;
         } else if ("env".equals(name)) {
             return ENVIRONMENT;
+        } else if ("intern".equals(name)) {
+            return INTERN;
         } else {
             return -1;
         }
@@ -179,6 +308,7 @@ public class NodeFactory {
     public static Class getDeclaration(int no) {
         switch (no) {
             case TEXT:
+            case INTERN:
                 return String.class;
             case LINE:
             case COLUMN:
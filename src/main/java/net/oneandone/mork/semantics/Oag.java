@@ -15,16 +15,19 @@
  */
 package net.oneandone.mork.semantics;
 
+import net.oneandone.mork.misc.StringArrayList;
 import net.oneandone.mork.parser.Parser;
 import net.oneandone.mork.parser.ParserTable;
 import net.oneandone.mork.parser.TreeBuilder;
+import net.oneandone.mork.scanner.Interner;
 import net.oneandone.mork.scanner.Scanner;
 
 import java.io.PrintWriter;
 import java.io.Serializable;
 
 /**
- * Ordered attribute grammar.
+ * Ordered attribute grammar. The visits are immutable, all other fields hold the state of the current parse.
+ * Thus, an instance must not be used by more than one thread at a time, use newInstance to get another one.
  */
 public class Oag implements TreeBuilder, Serializable {
     private transient PrintWriter logging;
@@ -33,6 +36,14 @@ public class Oag implements TreeBuilder, Serializable {
     private transient Scanner scanner;
     private transient Parser parser;
     private transient Object environment;
+    private transient int recordSymbol = -1;
+    private transient RecordHandler recordHandler;
+    /** shared by all terminals with an [intern] attribute; kept between runs */
+    private transient Interner interner;
+    /** pool sizes to prepare when the factories are created; null for defaults */
+    private transient int[] poolSizes;
+    /** null to interpret the visits */
+    private transient CompiledVisits compiled;
 
     /**
      * Index by production.
@@ -42,9 +53,13 @@ public class Oag implements TreeBuilder, Serializable {
     // [symbol][attr]   attributes computed when constructing a node
     private final int[][] internalAttrs;
 
-    public Oag(Visits[] visits, int[][] internalAttrs) {
+    /** symbol names of the grammar, to look up symbols by name */
+    private final StringArrayList symbolTable;
+
+    public Oag(Visits[] visits, int[][] internalAttrs, StringArrayList symbolTable) {
         this.visits = visits;
         this.internalAttrs = internalAttrs;
+        this.symbolTable = symbolTable;
         this.logging = null;
         this.terminals = null;
         this.nonterminals = null;
@@ -58,22 +73,71 @@ public class Oag implements TreeBuilder, Serializable {
         this.logging = logging;
     }
 
-    public Oag newInstance() {
-        Oag oag;
+    public Visits[] getVisits() {
+        return visits;
+    }
 
-        oag = new Oag(newVisits(), internalAttrs);
-        oag.setLogging(logging);
-        return oag;
+    /** @return symbol number as printed in the listing, -1 if the grammar has no such symbol */
+    public int lookupSymbol(String name) {
+        return symbolTable.indexOf(name);
     }
 
-    private Visits[] newVisits() {
-        Visits[] result;
+    public CompiledVisits getCompiledVisits() {
+        return compiled;
+    }
 
-        result = new Visits[visits.length];
-        for (int i = visits.length - 1; i >= 0; i--) {
-            result[i] = visits[i].newInstance();
+    /**
+     * Evaluates attributes with the specified code instead of interpreting the visits. Attribution logging
+     * still interprets them.
+     *
+     * @param compiled generated from the visits of this oag; null to interpret them
+     */
+    public void setCompiledVisits(CompiledVisits compiled) {
+        if (nonterminals != null) {
+            throw new IllegalStateException("factories already created");
+        }
+        this.compiled = compiled;
+    }
+
+    /**
+     * Streams records: whenever all attributes of a node for the specified nonterminal are computed, they are
+     * passed to the handler. Nodes are freed as usual, thus, if the handler replaces collected values by
+     * Node.STREAMED, memory usage does not depend on the number of records -- as long as the records and the
+     * symbols containing them don't wait for inherited attributes computed after the record.
+     *
+     * @param symbol  nonterminal, as returned by lookupSymbol, or -1 to stream nothing
+     * @param handler null to stream nothing
+     */
+    public void setRecordHandler(int symbol, RecordHandler handler) {
+        int i;
+
+        if (symbol == recordSymbol && handler == recordHandler) {
+            return;
+        }
+        this.recordSymbol = symbol;
+        this.recordHandler = handler;
+        if (nonterminals != null) {
+            for (i = 0; i < nonterminals.length; i++) {
+                nonterminals[i].setRecordHandler(recordHandler(i));
+            }
         }
-        return result;
+    }
+
+    private RecordHandler recordHandler(int production) {
+        return recordHandler != null && parser.getTable().getLeft(production) == recordSymbol ? recordHandler : null;
+    }
+
+    /**
+     * Creates a new instance with its own node pools. Visits are immutable and shared with this instance.
+     */
+    public Oag newInstance() {
+        Oag oag;
+
+        oag = new Oag(visits, internalAttrs, symbolTable);
+        oag.setLogging(logging);
+        oag.setPoolSizes(getPoolSizes());
+        oag.setCompiledVisits(compiled);
+        return oag;
     }
 
     @Override
@@ -83,6 +147,11 @@ public class Oag implements TreeBuilder, Serializable {
         initFactories();
     }
 
+    /** Forgets the scanner of the last run, so an idle instance doesn't keep the input alive. */
+    public void close() {
+        this.scanner = null;
+    }
+
     private void initFactories() {
         int i;
         ParserTable table;
@@ -94,14 +163,101 @@ public class Oag implements TreeBuilder, Serializable {
         nonterminals = new NodeFactory[visits.length];
         for (i = 0; i < nonterminals.length; i++) {
             nonterminals[i] =
-                new NodeFactory(10, table.getLength(i), internalAttrs[table.getLeft(i)], visits[i]);
+                new NodeFactory(10, table.getLength(i), internalAttrs[table.getLeft(i)], visits[i], compiled, i);
+            nonterminals[i].setRecordHandler(recordHandler(i));
         }
         terminals = new NodeFactory[internalAttrs.length];
+        if (interner == null) {
+            interner = new Interner();
+        }
         for (i = 0; i < terminals.length; i++) {
-            terminals[i] = new NodeFactory(5, internalAttrs[i]);
+            terminals[i] = new NodeFactory(5, internalAttrs[i], interner);
+        }
+        if (poolSizes != null) {
+            setPoolSizes(poolSizes);
+            poolSizes = null;
         }
     }
 
+    //-- node pools
+
+    /**
+     * @return sizes of the node pools, nonterminals by production first, then terminals; null if this oag has
+     *         not run yet
+     */
+    public int[] getPoolSizes() {
+        int[] result;
+        int i;
+
+        if (nonterminals == null) {
+            return null;
+        }
+        result = new int[nonterminals.length + terminals.length];
+        for (i = 0; i < nonterminals.length; i++) {
+            result[i] = nonterminals[i].getPoolSize();
+        }
+        for (i = 0; i < terminals.length; i++) {
+            result[nonterminals.length + i] = terminals[i].getPoolSize();
+        }
+        return result;
+    }
+
+    /**
+     * Fills the node pools with new nodes, so that the first runs don't have to allocate them.
+     *
+     * @param sizes as returned by getPoolSizes, typically of an oag that has processed similar input; null to
+     *              do nothing
+     */
+    public void setPoolSizes(int[] sizes) {
+        int i;
+
+        if (sizes == null) {
+            return;
+        }
+        if (nonterminals == null) {
+            poolSizes = sizes;
+            return;
+        }
+        for (i = 0; i < nonterminals.length; i++) {
+            nonterminals[i].prepare(sizes[i]);
+        }
+        for (i = 0; i < terminals.length; i++) {
+            terminals[i].prepare(sizes[nonterminals.length + i]);
+        }
+    }
+
+    /** @return number of nodes taken from the pools */
+    public long getPoolHits() {
+        long result;
+
+        result = 0;
+        if (nonterminals != null) {
+            for (NodeFactory factory : nonterminals) {
+                result += factory.getHits();
+            }
+            for (NodeFactory factory : terminals) {
+                result += factory.getHits();
+            }
+        }
+        return result;
+    }
+
+    /** @return number of nodes allocated because a pool was empty */
+    public long getPoolMisses() {
+        long result;
+
+        result = 0;
+        if (nonterminals != null) {
+            for (NodeFactory factory : nonterminals) {
+                result += factory.getMisses();
+            }
+            for (NodeFactory factory : terminals) {
+                result += factory.getMisses();
+            }
+        }
+        return result;
+    }
+
 
     //-- TreeBuilder interface
 
@@ -0,0 +1,34 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.semantics;
+
+import net.oneandone.mork.scanner.Position;
+
+/**
+ * Receives the attributes of record nodes as soon as they are computed. See Oag.setRecordHandler.
+ */
+public interface RecordHandler {
+    /**
+     * To free the memory of a value, the handler replaces it by Node.STREAMED. Transport attribution skips
+     * streamed values, thus, records that would be collected into a sequence don't use memory. Other attribution
+     * functions must not see streamed values.
+     *
+     * @param position  start position of the record
+     * @param attrs     attributes of the record, ordered as in the listing; the array is re-used after this method
+     *                  returns, copy what you need
+     */
+    void record(Position position, Object[] attrs);
+}
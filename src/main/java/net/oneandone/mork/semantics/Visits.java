@@ -21,6 +21,7 @@ import net.oneandone.graph.EdgeIterator;
 import net.oneandone.graph.Graph;
 import net.oneandone.sushi.util.Util;
 
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -30,8 +31,18 @@ import java.util.Set;
  * Uwe Kastens: "Ordered Attribute Grammars", Acta Informatics, 1980.
  */
 public class Visits {
-    /** Attributions or Integer objects. */
-    private final Object[] visits;
+    /** Opcodes, stored in the lower 2 bits of an instruction; the remaining bits hold the argument. */
+    public static final int EVAL = 0;    // argument: index into attributions
+    public static final int VISIT = 1;   // argument: child ofs
+    public static final int RETURN = 2;  // compute attributes in parent, come back later
+
+    /** Instructions. */
+    final int[] code;
+
+    final Attribution[] attributions;
+
+    /** AttributionBuffers for visits computed without layout, used by toString only; null otherwise */
+    private final Object[] buffers;
 
     public static Visits forEDP(int prod, Graph<AttributeOccurrence> edp, Ag sems, List<Attribute>[][] as, Layout layout) throws GenericException {
         EdgeIterator<AttributeOccurrence> iter;
@@ -101,32 +112,54 @@ public class Visits {
         return new Visits(lst.toArray());
     }
 
+    /** @param visits Attributions or visits created by createVisit; AttributionBuffers if there's no layout */
     public Visits(Object[] visits) {
-        this.visits = visits;
-    }
-
-    public Visits newInstance() {
-        Object[] copy;
+        int i;
+        int next;
+        int count;
         Object obj;
+        Object[] args;
 
-        copy = new Object[visits.length];
-        for (int i = visits.length - 1; i >= 0; i--) {
+        code = new int[visits.length];
+        args = new Object[visits.length];
+        count = 0;
+        for (i = 0; i < visits.length; i++) {
             obj = visits[i];
-            if (obj instanceof Attribution) {
-                copy[i] = ((Attribution) obj).newInstance();
+            if (obj instanceof Integer) {
+                next = getOfs(obj);
+                code[i] = next == -1 ? RETURN : (next << 2) | VISIT;
             } else {
-                copy[i] = obj;
+                args[count] = obj;
+                code[i] = (count << 2) | EVAL;
+                count++;
+            }
+        }
+        attributions = new Attribution[count];
+        for (i = 0; i < count; i++) {
+            if (!(args[i] instanceof Attribution)) {
+                break;
             }
+            attributions[i] = (Attribution) args[i];
         }
-        return new Visits(copy);
+        buffers = i < count ? Arrays.copyOf(args, count) : null;
     }
 
-    public Object get(int idx) {
-        return visits[idx];
+    public Visits(int[] code, Attribution[] attributions) {
+        this.code = code;
+        this.attributions = attributions;
+        this.buffers = null;
     }
 
     public int size() {
-        return visits.length;
+        return code.length;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public Attribution[] getAttributions() {
+        return attributions;
     }
 
     public static Object map(int prod, AttributeOccurrence ao, Ag sems, List<Attribute>[][] as) {
@@ -161,38 +194,34 @@ public class Visits {
     public String toString() {
         StringBuilder buffer;
         int i;
-        int max;
-        Object obj;
-        int no;
-        int ofs;
+        int instruction;
 
         buffer = new StringBuilder();
-        max = visits.length;
-        for (i = 0; i < max; i++) {
+        for (i = 0; i < code.length; i++) {
             if (i > 0) {
                 buffer.append(' ');
             }
-            obj = visits[i];
-            if (obj instanceof Integer) {
-                ofs = getPreOfs(obj);
-                no = getPreNo(obj);
-                buffer.append(no);
-                buffer.append(':');
-                if (ofs == -1) {
-                    buffer.append('^');
-                } else {
+            instruction = code[i];
+            switch (instruction & 3) {
+                case EVAL:
+                    buffer.append(buffers != null ? buffers[instruction >> 2] : attributions[instruction >> 2]);
+                    break;
+                case VISIT:
                     buffer.append('!');
-                    buffer.append(ofs);
-                }
-            } else {
-                buffer.append(obj.toString());
+                    buffer.append(instruction >> 2);
+                    break;
+                case RETURN:
+                    buffer.append('^');
+                    break;
+                default:
+                    throw new IllegalStateException();
             }
         }
         return buffer.toString();
     }
 
     public static Integer createVisit(int ofs) {
-        return new Integer(ofs);
+        return Integer.valueOf(ofs);
     }
 
     public static int getOfs(Object visit) {
@@ -203,7 +232,7 @@ public class Visits {
      * @param ofs -1 for left-hand side
      */
     public static Integer createPreVisit(int no, int ofs) {
-        return new Integer((ofs << 16) + no);
+        return Integer.valueOf((ofs << 16) + no);
     }
 
     public static int getPreNo(Object preVisit) {
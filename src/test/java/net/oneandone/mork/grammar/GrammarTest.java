@@ -37,6 +37,7 @@ public class GrammarTest {
         Grammar g;
         Map<Integer, PrefixSet> firsts;
         StringArrayList symbolTable;
+        PrefixEncoding encoding;
         int k = 1;
 
         g = Grammar.forProductions("Z S",
@@ -48,9 +49,10 @@ public class GrammarTest {
         symbolTable = g.getSymbolTable();
         firsts = g.firsts(k);
         assertEquals(6, firsts.size());
-        assertEquals(PrefixSet.one(symbolTable.indexOf("b")), firsts.get(symbolTable.indexOf("Z")));
-        assertEquals(PrefixSet.one(symbolTable.indexOf("b")), firsts.get(symbolTable.indexOf("S")));
-        assertEquals(PrefixSet.one(symbolTable.indexOf("a")), firsts.get(symbolTable.indexOf("A")));
+        encoding = firsts.get(symbolTable.indexOf("Z")).getEncoding();
+        assertEquals(PrefixSet.one(encoding, symbolTable.indexOf("b")), firsts.get(symbolTable.indexOf("Z")));
+        assertEquals(PrefixSet.one(encoding, symbolTable.indexOf("b")), firsts.get(symbolTable.indexOf("S")));
+        assertEquals(PrefixSet.one(encoding, symbolTable.indexOf("a")), firsts.get(symbolTable.indexOf("A")));
     }
 
     @Test
@@ -66,7 +68,7 @@ public class GrammarTest {
         firsts = g.firsts(1);
         assertEquals(2, firsts.size());
         set = firsts.get(symbolTable.indexOf("I"));
-        expected = PrefixSet.one();
+        expected = PrefixSet.one(set.getEncoding());
         expected.addUnpacked(symbolTable.indexOf("a"));
         assertEquals(expected, set);
     }
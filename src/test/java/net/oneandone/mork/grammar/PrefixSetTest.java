@@ -25,6 +25,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class PrefixSetTest {
+    private static final PrefixEncoding ENCODING = new PrefixEncoding(9, false);
+    private static final int BASE = (int) ENCODING.getBase();
+
     public static void main(String[] args) {
         boolean[] dividable = new boolean[1000000];
         List<Integer> primes;
@@ -54,7 +57,7 @@ public class PrefixSetTest {
     public void grow() {
         PrefixSet set;
 
-        set = new PrefixSet();
+        set = new PrefixSet(ENCODING);
         for (int i = 0; i < 40; i++) {
             assertTrue(set.addUnpacked(i));
         }
@@ -64,26 +67,96 @@ public class PrefixSetTest {
     }
 
     @Test
-    public void qualityK1() {
-        PrefixSet set;
+    public void bitmapK1() {
+        PrefixSet a;
+        PrefixSet b;
 
-        set = new PrefixSet();
-        for (int i = 0; i < Prefix.BASE - 1; i++) {
-            set.addUnpacked(i);
+        a = new PrefixSet(ENCODING);
+        b = new PrefixSet(ENCODING);
+        for (int i = 0; i < BASE - 1; i++) {
+            a.addUnpacked(i);
+            b.addUnpacked(BASE - 2 - i);
         }
-        assertEquals(1.0, set.hashQuality(), 0.01);
+        assertEquals(BASE - 1, a.size());
+        assertEquals(0.0, a.load(), 0.0);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        b.addUnpacked();
+        assertEquals(BASE, b.size());
+        assertFalse(a.equals(b));
+        assertTrue(b.containsAll(a));
+        assertFalse(a.containsAll(b));
+    }
+
+    @Test
+    public void bitmapNarrow() {
+        PrefixEncoding narrow;
+        PrefixSet a;
+        PrefixSet b;
+
+        narrow = new PrefixEncoding(3, false);
+        a = new PrefixSet(narrow);
+        a.addUnpacked(1, 2);
+        a.addUnpacked(6, 6);
+        assertEquals(2, a.size());
+        assertEquals(0.0, a.load(), 0.0);
+        b = new PrefixSet(narrow);
+        b.addUnpacked(1, 2, 3);
+        assertTrue(b.load() > 0.0);
+        b.addUnpacked(6, 6);
+        b.addUnpacked(1, 2);
+        assertTrue(b.containsAll(a));
+        assertTrue(b.intersects(a));
+        assertFalse(a.containsAll(b));
+        a.addUnpacked(1, 2, 3);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
     }
 
     @Test
     public void qualityK2() {
         PrefixSet set;
 
-        set = new PrefixSet();
-        for (int i = 0; i < Prefix.BASE - 1; i++) {
-            for (int j = 0; j < Prefix.BASE - 1; j++) {
+        set = new PrefixSet(ENCODING);
+        for (int i = 0; i < BASE - 1; i++) {
+            for (int j = 0; j < BASE - 1; j++) {
                 set.addUnpacked(i, j);
             }
         }
         assertEquals(1.0, set.hashQuality(), 0.01);
     }
+
+    @Test
+    public void mixedLengths() {
+        PrefixSet a;
+        PrefixSet b;
+        Prefix prefix;
+        int count;
+
+        a = new PrefixSet(ENCODING);
+        a.addUnpacked();
+        a.addUnpacked(BASE - 2);
+        a.addUnpacked(3, 4);
+        assertEquals(3, a.size());
+        count = 0;
+        prefix = a.iterator();
+        while (prefix.step()) {
+            count++;
+        }
+        assertEquals(3, count);
+        b = new PrefixSet(ENCODING);
+        b.addUnpacked(3, 4);
+        b.addUnpacked(BASE - 2);
+        assertTrue(a.containsAll(b));
+        assertFalse(b.containsAll(a));
+        b.addUnpacked();
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        b = PrefixSet.one(ENCODING, 7);
+        assertFalse(a.intersects(b));
+        b.addUnpacked(3, 4);
+        assertTrue(a.intersects(b));
+        b.addAll(a);
+        assertEquals(4, b.size());
+    }
 }
@@ -25,6 +25,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class PrefixTest {
+    private static final PrefixEncoding ENCODING = PrefixEncoding.create(100, 7);
+
     @Test
     public void empty() {
         Prefix p;
@@ -64,24 +66,60 @@ public class PrefixTest {
 
         left = prefix(10, 11).data;
         right = prefix(20, 21, 22);
-        test = Prefix.concat(left, right.data, 2);
+        test = ENCODING.concat(left, right.data, 2);
         assertEquals(left, test);
-        check(Prefix.concat(left, right.data, 3), 10, 11, 20);
-        check(Prefix.concat(left, right.data, 4), 10, 11, 20, 21);
-        check(Prefix.concat(left, right.data, 5), 10, 11, 20, 21, 22);
-        check(Prefix.concat(left, right.data, 6), 10, 11, 20, 21, 22);
-        check(Prefix.concat(left, right.data, 7), 10, 11, 20, 21, 22);
+        check(ENCODING.concat(left, right.data, 3), 10, 11, 20);
+        check(ENCODING.concat(left, right.data, 4), 10, 11, 20, 21);
+        check(ENCODING.concat(left, right.data, 5), 10, 11, 20, 21, 22);
+        check(ENCODING.concat(left, right.data, 6), 10, 11, 20, 21, 22);
+        check(ENCODING.concat(left, right.data, 7), 10, 11, 20, 21, 22);
+    }
+
+    @Test
+    public void width() {
+        assertEquals(512, PrefixEncoding.create(511, 7).getBase());
+        assertFalse(PrefixEncoding.create(511, 7).isInterned());
+        assertEquals(1024, PrefixEncoding.create(600, 1).getBase());
+        assertTrue(PrefixEncoding.create(600, 7).isInterned());
+    }
+
+    @Test
+    public void interned() {
+        PrefixEncoding encoding;
+        long left;
+        long right;
+        long result;
+
+        encoding = PrefixEncoding.create(600, 10);
+        assertTrue(encoding.isInterned());
+        assertEquals(600, encoding.pack(599));
+        left = encoding.pack(598, 599);
+        assertTrue(left >= encoding.getBase());
+        assertEquals(left, encoding.pack(598, 599));
+        right = encoding.pack(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        assertEquals(10, encoding.size(right));
+        assertEquals(1, encoding.first(right));
+        result = encoding.concat(left, right, 10);
+        assertTrue(Arrays.equals(new int[] { 598, 599, 1, 2, 3, 4, 5, 6, 7, 8 }, encoding.unpack(result)));
+        assertTrue(encoding.isFull(result, 10));
+        assertFalse(encoding.isFull(left, 10));
+        assertEquals(left, encoding.concat(left, encoding.pack(), 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void symbolTooBig() {
+        PrefixEncoding.create(600, 1).pack(1023);
     }
 
     private void check(long actual, int ... expected) {
-        assertTrue(Arrays.equals(Prefix.unpack(actual), expected));
+        assertTrue(Arrays.equals(ENCODING.unpack(actual), expected));
     }
 
     private Prefix prefix(int ... symbols) {
         PrefixSet set;
         Prefix result;
 
-        set = new PrefixSet();
+        set = new PrefixSet(ENCODING);
         set.addUnpacked(symbols);
         result = set.iterator();
         result.step();
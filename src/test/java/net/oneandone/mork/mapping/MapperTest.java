@@ -0,0 +1,419 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.mapping;
+
+import net.oneandone.mork.compiler.Syntax;
+import net.oneandone.mork.parser.Parser;
+import net.oneandone.mork.parser.TreeBuilder;
+import net.oneandone.mork.scanner.Position;
+import net.oneandone.mork.scanner.Scanner;
+import net.oneandone.mork.semantics.Node;
+import net.oneandone.mork.semantics.RecordHandler;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Uses the SyntaxMapper created by the bootstrap. */
+public class MapperTest {
+    private static final String SYNTAX = "net.oneandone.mork.compiler.SyntaxMapper";
+    private static final String[] FILES = { "src/main/Syntax.syntax", "src/main/Mapper.syntax" };
+
+    @Test
+    public void sequential() throws IOException {
+        Mapper mapper;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        for (String file : FILES) {
+            assertTrue(mapper.run(file)[0] instanceof Syntax);
+        }
+    }
+
+    @Test
+    public void lazyText() throws IOException {
+        Mapper mapper;
+        String src;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        src = new String(Files.readAllBytes(Paths.get(FILES[0])), "UTF-8");
+        // CharSequence inputs pass token text as TokenText; functions must still see Strings
+        assertEquals(grammar(mapper, FILES[0]), ((Syntax) mapper.run(FILES[0], src)[0]).getGrammar().toString());
+    }
+
+    @Test
+    public void inputNotRetained() throws Exception {
+        Mapper mapper;
+        WeakReference<CharSequence> input;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        input = runAndForget(mapper);
+        for (int i = 0; i < 100 && input.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // pooled nodes and idle contexts no longer refer to the input
+        assertNull(input.get());
+        assertTrue(mapper.getPoolMisses() > 0);
+    }
+
+    private static WeakReference<CharSequence> runAndForget(Mapper mapper) throws IOException {
+        CharSequence src;
+
+        src = new String(Files.readAllBytes(Paths.get(FILES[0])), "UTF-8");
+        assertTrue(mapper.run(FILES[0], src)[0] instanceof Syntax);
+        return new WeakReference<CharSequence>(src);
+    }
+
+    @Test
+    public void syntaxErrorPosition() throws IOException {
+        Mapper mapper;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        try {
+            mapper.run("errors", "[PARSER] S ::= \"a\" ; ; [SCANNER]");
+            fail();
+        } catch (IOException e) {
+            // the second semicolon, the table has no default reductions that run before the error is detected
+            assertEquals("errors:1:22: syntax error", e.getMessage());
+        }
+    }
+
+    @Test
+    public void failureIsScopedToRun() throws IOException {
+        Mapper mapper;
+        StringWriter errors;
+
+        errors = new StringWriter();
+        mapper = new Mapper(SYNTAX, new PrintWriterErrorHandler(new PrintWriter(errors)));
+        try {
+            mapper.run("src/test/java/net/oneandone/mork/compiler/files/Invalid.syntax");
+            fail();
+        } catch (IOException e) {
+            assertEquals("mapping failed", e.getMessage());
+        }
+        assertTrue(errors.toString().length() > 0);
+        // the failure is not remembered for the next run
+        assertTrue(mapper.run(FILES[0])[0] instanceof Syntax);
+    }
+
+    @Test
+    public void failureIsResetByNextRun() throws IOException {
+        Mapper mapper;
+        StringWriter errors;
+
+        errors = new StringWriter();
+        mapper = new Mapper(SYNTAX, new PrintWriterErrorHandler(new PrintWriter(errors)));
+        try {
+            // closing the reader fails after the error has been reported, so the handler isn't closed
+            mapper.run("broken", new StringReader("%%%") {
+                @Override
+                public void close() {
+                    throw new IllegalStateException("close failed");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("close failed", e.getMessage());
+        }
+        assertTrue(errors.toString().length() > 0);
+        assertTrue(mapper.run(FILES[0])[0] instanceof Syntax);
+    }
+
+    @Test
+    public void serialized() throws Exception {
+        Mapper mapper;
+        ByteArrayOutputStream bytes;
+        ObjectOutputStream out;
+
+        bytes = new ByteArrayOutputStream();
+        out = new ObjectOutputStream(bytes);
+        out.writeObject(new Mapper(SYNTAX, new SerializableErrorHandler()));
+        out.close();
+        mapper = (Mapper) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertTrue(mapper.run(FILES[0])[0] instanceof Syntax);
+    }
+
+    private static class SerializableErrorHandler extends ExceptionErrorHandler implements Serializable {
+    }
+
+    @Test
+    public void deepNesting() throws IOException {
+        Mapper mapper;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        assertTrue(mapper.run("deep", new StringReader(nested(500)))[0] instanceof Syntax);
+        assertTrue(mapper.run("shallow", new StringReader(nested(1)))[0] instanceof Syntax);
+    }
+
+    @Test
+    public void stackShrinks() throws IOException {
+        Mapper mapper;
+        Parser parser;
+        StackProbe probe;
+        int initial;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        parser = mapper.getParser().newInstance();
+        parser.setErrorHandler(new ExceptionErrorHandler());
+        initial = parser.getStackCapacity();
+        probe = new StackProbe();
+        // every open parenthesis stays on the stack until it's closed
+        assertNotNull(parser.run(new Position("deep"), nested(5000), probe, null));
+        assertTrue(probe.capacity > 4096);
+        assertEquals(initial, parser.getStackCapacity());
+        probe = new StackProbe();
+        assertNotNull(parser.run(new Position("shallow"), nested(1), probe, null));
+        assertEquals(initial, probe.capacity);
+    }
+
+    /** Builds no tree, but records the largest stack capacity of the parser. */
+    private static class StackProbe implements TreeBuilder {
+        private Parser parser;
+        public int capacity;
+
+        @Override
+        public void open(Scanner scanner, Parser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public Object createTerminal(int terminal) {
+            capacity = Math.max(capacity, parser.getStackCapacity());
+            return Boolean.TRUE;
+        }
+
+        @Override
+        public Object createNonterminal(int production) {
+            for (int i = parser.getTable().getLength(production); i > 0; i--) {
+                parser.pop();
+            }
+            return Boolean.TRUE;
+        }
+    }
+
+    @Test
+    public void stackOverflow() throws IOException {
+        Mapper mapper;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        mapper.setMaxDepth(100);
+        assertTrue(mapper.run("shallow", new StringReader(nested(1)))[0] instanceof Syntax);
+        try {
+            mapper.run("deep", new StringReader(nested(100)));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("nested too deeply"));
+        }
+    }
+
+    @Test
+    public void records() throws IOException {
+        Mapper mapper;
+        final List<Position> positions;
+
+        positions = new ArrayList<Position>();
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        mapper.setRecordHandler("Rule", new RecordHandler() {
+            @Override
+            public void record(Position position, Object[] attrs) {
+                Position copy;
+
+                copy = new Position();
+                copy.set(position);
+                positions.add(copy);
+            }
+        });
+        assertTrue(mapper.run(FILES[1])[0] instanceof Syntax);
+        assertEquals(39, positions.size());  // number of "::=" in the file
+        assertEquals(23, positions.get(0).getLine());
+
+        positions.clear();
+        mapper.setRecordHandler(null, null);
+        assertTrue(mapper.run(FILES[1])[0] instanceof Syntax);
+        assertEquals(0, positions.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordsUnknownSymbol() {
+        new Mapper(SYNTAX, new ExceptionErrorHandler()).setRecordHandler("NoSuchSymbol", new RecordHandler() {
+            @Override
+            public void record(Position position, Object[] attrs) {
+            }
+        });
+    }
+
+    @Test
+    public void streamed() {
+        Object list;
+
+        list = Transport.createSequenceValue(Node.STREAMED);
+        list = Transport.sequenceAndValue(list, "a");
+        list = Transport.sequenceAndValue(list, Node.STREAMED);
+        list = Transport.sequenceAndOption(list, Node.STREAMED);
+        assertEquals(1, ((List) list).size());
+    }
+
+    private static String nested(int depth) {
+        StringBuilder builder;
+
+        builder = new StringBuilder("[PARSER] S ::= ");
+        for (int i = 0; i < depth; i++) {
+            builder.append('(');
+        }
+        builder.append("\"a\"");
+        for (int i = 0; i < depth; i++) {
+            builder.append(')');
+        }
+        builder.append("; [SCANNER]");
+        return builder.toString();
+    }
+
+    @Test
+    public void pools() throws IOException {
+        Mapper mapper;
+        Mapper prepared;
+        long misses;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        mapper.run(FILES[0]);
+        misses = mapper.getPoolMisses();
+        assertTrue(misses > 0);
+        mapper.run(FILES[0]);
+        // the pools have adapted, the second run allocates no nodes
+        assertEquals(misses, mapper.getPoolMisses());
+        assertTrue(mapper.getPoolHits() > 0);
+
+        prepared = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        prepared.setPoolSizes(mapper.getPoolSizes());
+        prepared.run(FILES[0]);
+        assertEquals(0, prepared.getPoolMisses());
+    }
+
+    @Test
+    public void compiledVisits() throws IOException {
+        Mapper mapper;
+        Mapper logged;
+        StringWriter log;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        // the bootstrap generates SyntaxMapper with -visits
+        assertNotNull(mapper.getSemantics().getCompiledVisits());
+        log = new StringWriter();
+        logged = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        // attribution logging interprets the visits
+        logged.setLogging(null, new PrintWriter(log));
+        for (String file : FILES) {
+            assertEquals(grammar(logged, file), grammar(mapper, file));
+        }
+        assertTrue(log.toString().contains("visit"));
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        final Mapper mapper;
+        final String[] expected;
+        final List<Throwable> failures;
+        List<Thread> threads;
+        Thread thread;
+
+        mapper = new Mapper(SYNTAX, new ExceptionErrorHandler());
+        expected = new String[FILES.length];
+        for (int i = 0; i < FILES.length; i++) {
+            expected[i] = grammar(mapper, FILES[i]);
+        }
+        failures = new ArrayList<Throwable>();
+        threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < 10; n++) {
+                            for (int i = 0; i < FILES.length; i++) {
+                                assertEquals(expected[i], grammar(mapper, FILES[i]));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(failures.toString(), 0, failures.size());
+    }
+
+    @Test
+    public void runAll() throws InterruptedException {
+        Mapper mapper;
+        List<Path> sources;
+        final List<Result> results;
+
+        mapper = new Mapper(SYNTAX);
+        sources = new ArrayList<Path>();
+        for (int i = 0; i < 5; i++) {
+            for (String file : FILES) {
+                sources.add(Paths.get(file));
+            }
+        }
+        sources.add(Paths.get("src/test/java/net/oneandone/mork/compiler/files/Invalid.syntax"));
+        sources.add(Paths.get("nosuchfile"));
+        results = new ArrayList<Result>();
+        assertEquals(2, mapper.runAll(sources, 4, new ResultHandler() {
+            @Override
+            public void result(Result result) {
+                results.add(result);
+            }
+        }));
+        assertEquals(sources.size(), results.size());
+        for (Result result : results) {
+            if (result.source.toString().contains("Invalid") || result.source.toString().contains("nosuchfile")) {
+                assertNotNull(result.error);
+            } else {
+                assertTrue(result.attrs[0] instanceof Syntax);
+            }
+        }
+    }
+
+    private static String grammar(Mapper mapper, String file) throws IOException {
+        return ((Syntax) mapper.run(file)[0]).getGrammar().toString();
+    }
+}
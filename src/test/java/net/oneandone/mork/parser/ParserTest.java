@@ -98,5 +98,45 @@ public class ParserTest extends TestCase {
         assertEquals(0, ch.resolvers());
         assertEquals(conflicts, ch.conflicts());
         assertTrue(table.getValueCount() > 0);
+        checkCompressed(table, false);
+        checkCompressed(table, true);
+    }
+
+    /**
+     * Compressed tables behave the same. With default reductions, reductions replace errors; without them, errors
+     * are reported for the same state and terminal, i.e. at the same position and before any reduction.
+     */
+    private static void checkCompressed(ParserTable table, boolean defaultReductions) {
+        ParserTable compressed;
+        CombTable unpacked;
+        int state;
+        int symbol;
+        int production;
+        int value;
+
+        compressed = table.compress(defaultReductions);
+        unpacked = new CombTable(compressed.getComb().pack());
+        assertEquals(table.getStateCount(), compressed.getStateCount());
+        for (state = 0; state < table.getStateCount(); state++) {
+            for (symbol = 0; symbol < table.getSymbolCount(); symbol++) {
+                if (compressed.getComb().isNonterminal(symbol)) {
+                    continue;
+                }
+                value = compressed.lookup(state, symbol);
+                if (defaultReductions && table.lookup(state, symbol) == ParserTable.NOT_SET) {
+                    assertTrue(value == ParserTable.NOT_SET || ParserTable.getAction(value) == Parser.REDUCE);
+                } else {
+                    assertEquals(table.lookup(state, symbol), value);
+                }
+                assertEquals(value, unpacked.lookup(state, symbol));
+            }
+            for (production = 0; production < table.getProductionCount(); production++) {
+                if (table.lookup(state, table.getLeft(production)) != ParserTable.NOT_SET) {
+                    assertEquals(table.lookupShift(state, production), compressed.lookupShift(state, production));
+                    assertEquals(table.lookupShift(state, production),
+                            unpacked.lookupGoto(state, table.getLeft(production)));
+                }
+            }
+        }
     }
 }
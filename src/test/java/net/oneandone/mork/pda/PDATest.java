@@ -35,8 +35,10 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PDATest {
     @Test
@@ -79,14 +81,101 @@ public class PDATest {
         );
     }
 
+    @Test
+    public void g1Merged() throws Exception {
+        checkOk(10, 1, true, new String[] { "baa" },
+                "Z S",
+                "S S b",
+                "S b A a",
+                "A a S c",
+                "A a",
+                "A a S b");
+    }
+
+    /** LR(1), but not LALR(1): merging the states for E ::= e . and F ::= e . would add a reduce-reduce conflict */
+    @Test
+    public void notLalr() throws Exception {
+        String[] prods = { "Z S", "S a E c", "S a F d", "S b F c", "S b E d", "E e", "F e" };
+        String[] ok = { "aec", "aed", "bec", "bed" };
+
+        checkOk(14, 1, false, ok, prods);
+        checkOk(14, 1, true, ok, prods);
+    }
+
+    @Test
+    public void manySymbols() {
+        String[] prods;
+        Grammar grammar;
+
+        prods = new String[601];
+        prods[0] = "Z S";
+        for (int i = 1; i < prods.length; i++) {
+            prods[i] = "S t" + i + " u" + i;
+        }
+        grammar = Grammar.forProductions(prods);
+        check(1 + 1 + 600 * 2, 1, false, grammar);
+        check(1 + 1 + 600 * 2, 2, false, grammar);
+        check(1 + 1 + 600 * 2, 7, false, grammar);
+    }
+
+    @Test
+    public void threadsDontChangeIds() throws GenericException {
+        Grammar grammar;
+
+        grammar = Grammar.forProductions("Z S", "S a E c", "S a F d", "S b F c", "S b E d", "E e", "F e", "S S b");
+        assertEquals(dump(grammar, 1, 1), dump(grammar, 1, 4));
+    }
+
+    /** interned ids depend on thread timing, the lookahead order must not */
+    @Test
+    public void threadsDontChangeInterned() throws GenericException {
+        String[] prods;
+        Grammar grammar;
+        int k;
+
+        prods = new String[134];
+        prods[0] = "Z S";
+        prods[1] = "S S b";
+        prods[2] = "S S c";
+        prods[3] = "S N1";
+        for (int i = 1; i < 130; i++) {
+            prods[3 + i] = "N" + i + " N" + (i + 1);
+        }
+        prods[133] = "N130 a";
+        grammar = Grammar.forProductions(prods);
+        k = 8;
+        assertTrue(grammar.firsts(k).get(grammar.getStart()).getEncoding().isInterned());
+        assertEquals(dump(grammar, k, 1), dump(grammar, k, 4));
+    }
+
+    private String dump(Grammar grammar, int k, int threadCount) throws GenericException {
+        StringWriter dest;
+        PrintWriter writer;
+        PDA pda;
+
+        dest = new StringWriter();
+        writer = new PrintWriter(dest);
+        pda = PDA.create(grammar, grammar.firsts(k), k, threadCount);
+        pda.print(writer);
+        writer.println(pda.createTable(pda.getEofSymbol(), new ConflictHandler(grammar)).toString(grammar));
+        writer.flush();
+        return dest.toString();
+    }
+
     private void checkOk(int states, int k, String[] ok, String ... prods) throws GenericException, IOException {
+        checkOk(states, k, false, ok, prods);
+    }
+
+    private void checkOk(int states, int k, boolean merge, String[] ok, String ... prods)
+            throws GenericException, IOException {
         Grammar grammar;
 
         grammar = Grammar.forProductions(prods);
-        checkParsing(grammar, states, k, ok);
+        checkParsing(grammar, states, k, merge, ok);
     }
 
-    private void checkParsing(Grammar grammar, int states, int k, String[] ok) throws GenericException, IOException {
+    private void checkParsing(Grammar grammar, int states, int k, boolean merge, String[] ok)
+            throws GenericException, IOException {
         IntBitSet terminals;
         PDA pda;
         ConflictHandler conflictHandler;
@@ -99,10 +188,11 @@ public class PDATest {
 
         terminals = new IntBitSet();
         grammar.getTerminals(terminals);
-        pda = check(states, k, grammar);
+        pda = check(states, k, merge, grammar);
         pda.print(new PrintWriter(System.out));
         conflictHandler = new ConflictHandler(grammar);
         table = pda.createTable(pda.getEofSymbol(), conflictHandler);
+        assertEquals(0, conflictHandler.conflicts());
         scannerRules = new Rule[terminals.size()];
         for (int i = 0, terminal = terminals.first(); terminal != -1; terminal = terminals.next(terminal)) {
             str = grammar.getSymbolTable().get(terminal);
@@ -141,10 +231,10 @@ public class PDATest {
         }
     }
 
-    private PDA check(int states, int k, Grammar grammar) {
+    private PDA check(int states, int k, boolean merge, Grammar grammar) {
         PDA pda;
 
-        pda = PDA.create(grammar, grammar.firsts(k), k, 1);
+        pda = PDA.create(grammar, grammar.firsts(k), k, 1, merge);
         // pda.print(System.out);
         assertEquals(states, pda.size() - 1 /* TODO: artificial end state */);
         return pda;
@@ -23,6 +23,7 @@ import java.io.Reader;
 import java.io.StringReader;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -81,6 +82,94 @@ public class BufferTest {
         readPosition(3);
     }
 
+    @Test
+    public void lazyPosition() throws IOException {
+        String str;
+        Position start;
+
+        str = "ab\ncd\n\n\nefg\nhijklmn\n\no";
+        start = new Position();
+        start.set("ctx", 5, 7, 100);
+        pos = new Position();
+        pos.set(start);
+        buffer = new Buffer(3);
+        buffer.open(pos, new StringReader(str));
+        comparePositions(buffer, pos, start, str);
+    }
+
+    @Test
+    public void lazyCharSequencePosition() throws IOException {
+        String str;
+        Position start;
+
+        str = "ab\ncd\n\n\nefg\nhijklmn\n\no";
+        start = new Position();
+        start.set("ctx", 5, 7, 100);
+        pos = new Position();
+        pos.set(start);
+        comparePositions(new CharSequenceInput(pos, str), pos, start, str);
+    }
+
+    @Test
+    public void splitLines() throws IOException {
+        StringBuilder builder;
+        Lines lines;
+        Position first;
+
+        builder = new StringBuilder();
+        for (int i = 0; i < 3 * Lines.MAX_LINES; i++) {
+            builder.append("ab\n");
+        }
+        pos = new Position();
+        buffer = new Buffer(64);
+        buffer.open(pos, new StringReader(builder.toString()));
+        lines = buffer.getLines();
+        first = null;
+        for (int i = 0; i < 3 * Lines.MAX_LINES; i++) {
+            buffer.read();
+            buffer.read();
+            buffer.read();
+            buffer.eat();
+            if (i == 0) {
+                first = new Position();
+                buffer.getPosition(first);
+            }
+            assertEquals(i + 2, pos.getLine());
+            assertEquals(1, pos.getColumn());
+            assertTrue(buffer.getLines().size() < Lines.MAX_LINES);
+        }
+        assertNotSame(lines, buffer.getLines());
+        assertEquals(2, first.getLine());
+        assertEquals(1, first.getColumn());
+        assertEquals(Lines.MAX_LINES / 2 + 1, lines.getLine(3 * (Lines.MAX_LINES / 2)));
+        assertEquals(2, lines.getColumn(3 * (Lines.MAX_LINES / 2) + 1));
+    }
+
+    /** eats tokens of growing length and compares positions with Position.update */
+    private static void comparePositions(Input input, Position lazy, Position start, String str) throws IOException {
+        Position expected;
+        int ofs;
+        int length;
+        int i;
+
+        expected = new Position();
+        expected.set(start);
+        ofs = 0;
+        length = 1;
+        while (ofs < str.length()) {
+            length = Math.min(length, str.length() - ofs);
+            for (i = 0; i < length; i++) {
+                input.read();
+            }
+            input.eat();
+            expected.update(str.toCharArray(), ofs, ofs + length);
+            ofs += length;
+            length++;
+            assertEquals(expected.getOffset(), lazy.getOffset());
+            assertEquals(expected.toString(), lazy.toString());
+        }
+    }
+
     //--
 
     public void createPosition(int newlineCount) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.mork.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class InternerTest {
+    @Test
+    public void same() {
+        Interner interner;
+        String a;
+
+        interner = new Interner();
+        a = interner.intern("foo bar".toCharArray(), 0, 3);
+        assertEquals("foo", a);
+        assertSame(a, interner.intern("xfoo", 1, 4));
+        assertSame(a, interner.intern("foo".toCharArray(), 0, 3));
+        assertEquals("bar", interner.intern("foo bar".toCharArray(), 4, 3));
+        assertEquals(2, interner.size());
+    }
+
+    @Test
+    public void empty() {
+        Interner interner;
+
+        interner = new Interner();
+        assertEquals("", interner.intern(new char[0], 0, 0));
+        assertSame(interner.intern("", 0, 0), interner.intern("abc", 1, 1));
+    }
+
+    @Test
+    public void bounded() {
+        Interner interner;
+        int i;
+        String first;
+
+        interner = new Interner(16);
+        first = interner.intern("id0", 0, 3);
+        for (i = 1; i < 1000; i++) {
+            interner.intern("id" + i, 0, ("id" + i).length());
+        }
+        assertEquals(16, interner.size());
+        assertEquals("id0", interner.intern("id0", 0, 3));
+    }
+
+    @Test
+    public void tooLong() {
+        Interner interner;
+        char[] chars;
+
+        interner = new Interner();
+        chars = new char[Interner.MAX_LENGTH + 1];
+        assertNotSame(interner.intern(chars, 0, chars.length), interner.intern(chars, 0, chars.length));
+        assertEquals(0, interner.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void size() {
+        new Interner(100);
+    }
+}
@@ -27,8 +27,12 @@ import net.oneandone.mork.regexpr.Sequence;
 import net.oneandone.mork.regexpr.Without;
 import net.oneandone.sushi.util.IntBitSet;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 
 /**
  * TODO: more tests.
@@ -52,6 +56,256 @@ public class ScannerTest extends TestCase {
         scan("EOF",   EOF, null);
     }
 
+    public void testAsciiBoundary() throws GenericException, IOException {
+        table(
+            new Sequence(new Range('x'), new Loop(new Range((char) 120, (char) 200))),
+            new Range((char) 0, (char) 119)
+        );
+
+        input("x\u007f\u0080\u00c8y\u00c9");
+        scan("range", 0, "x\u007f\u0080\u00c8y");
+        scan("error", Scanner.ERROR, null);
+    }
+
+    public void testWideStates() throws GenericException, IOException {
+        checkRanges(4);   // linear search
+        checkRanges(20);  // binary search
+        checkRanges(80);  // page table
+    }
+
+    /** every second character of the Greek and Cyrillic blocks, and some more from the end of the BMP */
+    private void checkRanges(int count) throws GenericException, IOException {
+        RegExpr letters;
+        StringBuilder matching;
+        StringBuilder other;
+        char c;
+        int i;
+
+        letters = null;
+        matching = new StringBuilder();
+        other = new StringBuilder();
+        for (i = 0; i < count; i++) {
+            c = (char) (i < count / 2 ? 0x0370 + 2 * i : 0xf000 + 2 * i);
+            letters = letters == null ? new Range(c) : new Choice(letters, new Range(c));
+            matching.append(c);
+            other.append((char) (c + 1));
+        }
+        table(
+            new Sequence(letters, Loop.createStar(letters)),
+            new Sequence(new Range((char) 0x100, (char) 0xfffe), Loop.createStar(new Range((char) 0x100, (char) 0xfffe)))
+        );
+        input(matching.toString() + "\uffff");
+        scan("letters", 0, matching.toString());
+        scan("error", Scanner.ERROR, null);
+        input(other.toString() + "\u00ff");
+        scan("other", 1, other.toString());
+        scan("error", Scanner.ERROR, null);
+    }
+
+    public void testWide() throws GenericException, IOException {
+        RegExpr[] keywords;
+        int i;
+
+        keywords = new RegExpr[Scanner.NO_TERMINAL + 10];
+        for (i = 0; i < keywords.length; i++) {
+            keywords[i] = keyword("k" + i + ";");
+        }
+        table(keywords);
+        assertTrue(factory.wide);
+        input("k0;k2047;k2056;");
+        scan("first", 0, "k0;");
+        scan("no terminal", Scanner.NO_TERMINAL, "k2047;");
+        scan("last", Scanner.NO_TERMINAL + 9, "k2056;");
+        scan("EOF", EOF, null);
+
+        // serialized form
+        factory = new ScannerFactory(factory.start, factory.modeCount, factory.table, factory.wide);
+        input("k2056;");
+        scan("last", Scanner.NO_TERMINAL + 9, "k2056;");
+    }
+
+    public void testCompact() throws GenericException, IOException {
+        table(keyword("Hello"));
+        assertFalse(factory.wide);
+        assertEquals(factory.size(), factory.table.length);
+    }
+
+    public void testCursor() throws GenericException {
+        TokenCursor cursor;
+
+        table(
+            keyword("Hello"),
+            keyword("World"),
+            new Choice(new Range(' '), new Range('\n'))
+        );
+        cursor = new TokenCursor(factory, 0, new Position(), "Hello World\nHello?");
+        assertEquals(0, cursor.next());
+        assertEquals(0, cursor.getStart());
+        assertEquals(5, cursor.getEnd());
+        assertEquals("Hello", cursor.getText().toString());
+        assertEquals(2, cursor.next());
+        assertEquals(1, cursor.next());
+        assertEquals('W', cursor.getText().charAt(0));
+        assertEquals("orl", cursor.getText().subSequence(1, 4).toString());
+        assertEquals(1, cursor.getLine());
+        assertEquals(7, cursor.getColumn());
+        assertEquals(2, cursor.next());
+        assertEquals(0, cursor.next());
+        assertEquals(2, cursor.getLine());
+        assertEquals(1, cursor.getColumn());
+        assertEquals(12, cursor.getStart());
+        assertEquals(Scanner.ERROR, cursor.next());
+        assertEquals(17, cursor.getStart());
+        assertEquals(17, cursor.getEnd());
+        assertEquals(6, cursor.getColumn());
+        assertEquals(Scanner.ERROR, cursor.next());
+    }
+
+    public void testFill() throws GenericException {
+        TokenCursor cursor;
+        int[] terminals;
+        int[] offsets;
+
+        table(
+            keyword("a"),
+            keyword("bb")
+        );
+        cursor = new TokenCursor(factory, 0, new Position(), "abbbbaa");
+        terminals = new int[3];
+        offsets = new int[3];
+        assertEquals(3, cursor.fill(terminals, offsets));
+        assertEquals(0, terminals[0]);
+        assertEquals(1, terminals[1]);
+        assertEquals(1, terminals[2]);
+        assertEquals(0, offsets[0]);
+        assertEquals(1, offsets[1]);
+        assertEquals(3, offsets[2]);
+        assertEquals(2, cursor.fill(terminals, offsets));
+        assertEquals(6, offsets[1]);
+        assertEquals(7, cursor.getEnd());
+        assertEquals(0, cursor.fill(terminals, offsets));
+    }
+
+    public void testCharSequence() throws GenericException, IOException {
+        table(
+            keyword("Hello"),
+            keyword("World")
+        );
+
+        scanner = factory.newInstance(new Position(), "HelloWorldHello");
+
+        scan("Hello", 0, "Hello");
+        scan("World", 1, "World");
+        scan("Hello", 0, "Hello");
+        scan("EOF",   EOF, null);
+    }
+
+    public void testMapped() throws GenericException, IOException {
+        table(
+            keyword("H\u00e4llo"),
+            keyword("World")
+        );
+
+        mapped("H\u00e4lloWorld", "ISO-8859-1");
+        scan("Hello", 0, "H\u00e4llo");
+        scan("World", 1, "World");
+        scan("EOF",   EOF, null);
+
+        mapped("WorldH\u00e4llo", "UTF-8");
+        scan("World", 1, "World");
+        scan("Hello", 0, "H\u00e4llo");
+        scan("EOF",   EOF, null);
+
+        mapped("WorldWorld", "UTF-8");
+        scan("World", 1, "World");
+        scan("World", 1, "World");
+        scan("EOF",   EOF, null);
+    }
+
+    public void testUtf8() throws GenericException, IOException {
+        table(
+            keyword("H\u00e4llo"),
+            keyword("World"),
+            keyword("\u20ac"),
+            keyword("\ud83d\ude00"),
+            keyword("\ud83d"),
+            keyword("\ufffd")
+        );
+
+        utf8("WorldH\u00e4llo\u20ac".getBytes("UTF-8"));
+        scan("World", 1, "World");
+        scan("Hello", 0, "H\u00e4llo");
+        scan("Euro",  2, "\u20ac");
+        scan("EOF",   EOF, null);
+
+        utf8("\ud83d\ude00World".getBytes("UTF-8"));
+        scan("smiley", 3, "\ud83d\ude00");
+        scan("World",  1, "World");
+        scan("EOF",    EOF, null);
+
+        utf8(new byte[] { 'W', 'o', 'r', 'l', 'd', (byte) 0xc3, 'W', 'o', 'r', 'l', 'd', (byte) 0x80 });
+        scan("World",     1, "World");
+        scan("malformed", 5, "\ufffd");
+        scan("World",     1, "World");
+        scan("malformed", 5, "\ufffd");
+        scan("EOF",       EOF, null);
+
+        // bytes before the buffer position are not part of the input
+        scanner = factory.newInstance(new Position(), ByteBuffer.wrap("\ud83d\ude00World".getBytes("UTF-8")).position(1));
+        scan("malformed", 5, "\ufffd");
+        scan("malformed", 5, "\ufffd");
+        scan("malformed", 5, "\ufffd");
+        scan("World",     1, "World");
+        scan("EOF",       EOF, null);
+    }
+
+    public void testUtf8Surrogates() throws GenericException, IOException {
+        table(
+            keyword("\ud83d"),
+            new Sequence(keyword("\ude00"), keyword("World"))
+        );
+
+        // the scanner has to stop between the surrogates of a supplementary character
+        utf8("\ud83d\ude00World".getBytes("UTF-8"));
+        scan("high", 0, "\ud83d");
+        scan("low",  1, "\ude00World");
+        scan("EOF",  EOF, null);
+    }
+
+    public void testUtf8Position() throws GenericException, IOException {
+        Position position;
+
+        table(
+            keyword("\u00e4\n"),
+            keyword("\ud83d\ude00")
+        );
+
+        utf8("\u00e4\n\ud83d\ude00\ud83d\ude00".getBytes("UTF-8"));
+        scan("line", 0, "\u00e4\n");
+        scan("smiley", 1, "\ud83d\ude00");
+        scan("smiley", 1, "\ud83d\ude00");
+        position = new Position();
+        scanner.getPosition(position);
+        assertEquals(2, position.getLine());
+        assertEquals(3, position.getColumn());
+        assertEquals(4, position.getOffset());
+    }
+
+    private void utf8(byte[] bytes) {
+        scanner = factory.newInstance(new Position(), ByteBuffer.wrap(bytes));
+    }
+
+    private void mapped(String str, String encoding) throws IOException {
+        File file;
+        Charset charset;
+
+        charset = Charset.forName(encoding);
+        file = File.createTempFile("mapped", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), str.getBytes(charset));
+        scanner = factory.newInstance(CharSequenceInput.map(new Position(), file.toPath(), charset));
+    }
+
     public void testSimpleWithout() throws GenericException, IOException {
         table(
                 new Without(new Range((char) 0, (char) 65535), new Range('a')),